@@ -0,0 +1,163 @@
+package com.mrozekma.taut;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// Just enough of the websocket protocol (RFC 6455) for TautMockServer's RTM endpoint: the upgrade handshake, text frames, ping and close.
+// Fragmented messages and extensions aren't supported; the RTM client doesn't use them
+class MockRTMSocket implements Closeable {
+	private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+	private static final int OP_CONTINUATION = 0x0, OP_TEXT = 0x1, OP_CLOSE = 0x8, OP_PING = 0x9, OP_PONG = 0xA;
+
+	private final Socket socket;
+	private final DataInputStream in;
+	private final OutputStream out;
+	private volatile boolean closed = false;
+
+	private MockRTMSocket(Socket socket) throws IOException {
+		this.socket = socket;
+		this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		this.out = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	// Reads the HTTP upgrade request from 'socket' and answers it. Throws if it isn't a websocket handshake
+	static MockRTMSocket accept(Socket socket) throws IOException {
+		final MockRTMSocket rtn = new MockRTMSocket(socket);
+		String key = null;
+		while(true) {
+			final String line = rtn.readLine();
+			if(line.isEmpty()) {
+				break;
+			}
+			final int colon = line.indexOf(':');
+			if(colon > 0 && line.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("sec-websocket-key")) {
+				key = line.substring(colon + 1).trim();
+			}
+		}
+		if(key == null) {
+			rtn.out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			rtn.close();
+			throw new IOException("Not a websocket handshake");
+		}
+
+		final String accept;
+		try {
+			accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(StandardCharsets.US_ASCII)));
+		} catch(NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		rtn.out.write(String.format("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: %s\r\n\r\n", accept).getBytes(StandardCharsets.US_ASCII));
+		rtn.out.flush();
+		return rtn;
+	}
+
+	private String readLine() throws IOException {
+		final StringBuilder rtn = new StringBuilder();
+		while(true) {
+			final int c = this.in.read();
+			if(c < 0) {
+				throw new EOFException();
+			} else if(c == '\n') {
+				break;
+			} else if(c != '\r') {
+				rtn.append((char)c);
+			}
+		}
+		return rtn.toString();
+	}
+
+	boolean isOpen() {
+		return !this.closed;
+	}
+
+	// Calls 'fn' with each text message until the client closes the connection
+	void readLoop(Consumer<String> fn) {
+		try {
+			while(!this.closed) {
+				final int b0 = this.in.readUnsignedByte(), b1 = this.in.readUnsignedByte();
+				final int opcode = b0 & 0x0F;
+				long len = b1 & 0x7F;
+				if(len == 126) {
+					len = this.in.readUnsignedShort();
+				} else if(len == 127) {
+					len = this.in.readLong();
+				}
+				final byte[] mask = new byte[4];
+				if((b1 & 0x80) != 0) {
+					this.in.readFully(mask);
+				}
+				final byte[] payload = new byte[(int)len];
+				this.in.readFully(payload);
+				for(int i = 0; i < payload.length; i++) {
+					payload[i] ^= mask[i % 4];
+				}
+
+				switch(opcode) {
+				case OP_TEXT:
+				case OP_CONTINUATION:
+					fn.accept(new String(payload, StandardCharsets.UTF_8));
+					break;
+				case OP_PING:
+					this.writeFrame(OP_PONG, payload);
+					break;
+				case OP_CLOSE:
+					this.close();
+					break;
+				}
+			}
+		} catch(IOException e) {
+			// Client went away
+		} finally {
+			try {
+				this.close();
+			} catch(IOException e) {}
+		}
+	}
+
+	void send(String text) throws IOException {
+		this.writeFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Server frames are never masked
+	private synchronized void writeFrame(int opcode, byte[] payload) throws IOException {
+		if(this.closed) {
+			throw new IOException("Socket closed");
+		}
+		this.out.write(0x80 | opcode);
+		if(payload.length < 126) {
+			this.out.write(payload.length);
+		} else if(payload.length <= 0xFFFF) {
+			this.out.write(126);
+			this.out.write(payload.length >> 8);
+			this.out.write(payload.length & 0xFF);
+		} else {
+			this.out.write(127);
+			for(int shift = 56; shift >= 0; shift -= 8) {
+				this.out.write((int)(((long)payload.length >> shift) & 0xFF));
+			}
+		}
+		this.out.write(payload);
+		this.out.flush();
+	}
+
+	@Override public void close() throws IOException {
+		synchronized(this) {
+			if(this.closed) {
+				return;
+			}
+			try {
+				this.writeFrame(OP_CLOSE, new byte[0]);
+			} catch(IOException e) {
+				// Closing anyway
+			}
+			this.closed = true;
+		}
+		this.socket.close();
+	}
+}
@@ -0,0 +1,162 @@
+package com.mrozekma.taut;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Microbenchmarks for the library's hot paths, run against a TautMockServer so nothing talks to Slack.
+// Each benchmark is warmed up, then timed over several fixed-length iterations; the report gives throughput and bytes allocated per operation.
+// Run with the library and its dependencies on the classpath:
+//   java -cp out:bench-out:lib/* com.mrozekma.taut.TautBenchmarks [name regex]
+// Iteration counts and length come from the taut.bench.warmup, taut.bench.iterations and taut.bench.millis system properties
+public class TautBenchmarks {
+	@FunctionalInterface
+	interface Benchmark {
+		Object run() throws Exception;
+	}
+
+	private static final int WARMUP = Integer.getInteger("taut.bench.warmup", 3);
+	private static final int ITERATIONS = Integer.getInteger("taut.bench.iterations", 5);
+	private static final long MILLIS = Long.getLong("taut.bench.millis", 1000);
+
+	// Results go here so the JIT can't discard the work
+	private static volatile int sink;
+
+	private final java.util.Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+
+	private void add(String name, Benchmark benchmark) {
+		this.benchmarks.put(name, benchmark);
+	}
+
+	public static void main(String[] args) throws Exception {
+		final Pattern filter = Pattern.compile((args.length > 0) ? args[0] : ".*");
+		// Otherwise Nagle's algorithm adds ~40ms to every mock server response, which swamps anything being measured.
+		// Only takes effect before the first HttpServer is created
+		if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		final TautMockServer server = new TautMockServer().setUsers(1000).setChannels(10).setMessagesPerChannel(100000).start();
+		try(final TautConnection conn = new TautConnection("bench", new TautHTTPTransport().setApiUrl(server.getApiUrl()))) {
+			conn.getRateLimiter().setEnabled(false);
+			final TautBenchmarks benchmarks = new TautBenchmarks();
+			benchmarks.setup(conn);
+			benchmarks.run(filter);
+		} finally {
+			server.close();
+		}
+	}
+
+	private void setup(TautConnection conn) throws TautException {
+		final TautChannel channel = conn.getChannelByName("general");
+		TautUser.getAll(conn); // Warm the user cache so construction benchmarks don't measure loading
+
+		final String messageText = "{\"type\":\"message\",\"channel\":\"C000000\",\"user\":\"U000001\",\"text\":\"Hello <@U000002>, how's it going?\",\"ts\":\"1500000001.000000\"," +
+				"\"attachments\":[{\"fallback\":\"fallback\",\"text\":\"attachment\",\"fields\":[{\"title\":\"a\",\"value\":\"b\",\"short\":true}]}]," +
+				"\"reactions\":[{\"name\":\"thumbsup\",\"count\":2,\"users\":[\"U000001\",\"U000002\"]}]}";
+		final org.json.JSONObject rawMessage = new org.json.JSONObject(messageText);
+		final JSONObject message = new JSONObject(messageText);
+		final org.json.JSONArray rawArray = new org.json.JSONArray();
+		for(int i = 0; i < 100; i++) {
+			rawArray.put(new org.json.JSONObject(messageText));
+		}
+
+		this.add("json.wrapObject", () -> new JSONObject(rawMessage));
+		this.add("json.wrapArray", () -> new JSONArray(rawArray));
+		this.add("json.getNested", () -> message.getJSONArray("attachments").getJSONObject(0).getJSONArray("fields").getJSONObject(0));
+		this.add("json.parse", () -> new JSONObject(messageText));
+
+		// A users.list-sized response, through each codec
+		final String usersText = conn.post("users.list").toString();
+		final JSONObject users = new JSONObject(usersText);
+		for(String codecName : new String[] {"org", "fast"}) {
+			final TautJSONCodec codec = codecName.equals("org") ? TautJSONCodec.ORG_JSON : TautJSONCodec.FAST;
+			this.add("codec." + codecName + ".parse", () -> codec.parse(new java.io.StringReader(usersText)));
+			this.add("codec." + codecName + ".write", () -> codec.toString(users));
+		}
+
+		final TautEventListener listener = new TautEventListener() {
+			@Override public void onMessage(TautMessage message) {
+				sink += message.getText().length();
+			}
+		};
+		this.add("event.fire", () -> {
+			listener.fire(conn, message);
+			return null;
+		});
+
+		this.add("event.decode", () -> TautEvent.decode(conn, TautEventListener.EventType.message, message).get());
+
+		this.add("message.construct", () -> new TautMessage(channel, message));
+
+		final JSONObject postArgs = new JSONObject().put("token", "bench").put("channel", channel.getId()).put("text", "Hello, world").put("as_user", true).put("parse", "none").put("link_names", 1);
+		final byte[] fileData = new byte[64 * 1024];
+		new Random(0).nextBytes(fileData);
+		final JSONObject uploadArgs = new JSONObject().put("token", "bench").put("channels", channel.getId()).put("filename", "data.bin").put("file", fileData);
+		this.add("post.encodeForm", () -> EntityUtils.toByteArray(TautConnection.encodeArgs(postArgs)));
+		this.add("post.encodeMultipart", () -> {
+			final HttpEntity entity = TautConnection.encodeArgs(uploadArgs);
+			entity.writeTo(new java.io.ByteArrayOutputStream());
+			return entity;
+		});
+		this.add("post.roundTrip", () -> conn.post("api.test"));
+
+		this.add("history.page1000", () -> {
+			int count = 0;
+			for(TautMessage m : channel.history(200)) {
+				if(++count == 1000) {
+					break;
+				}
+			}
+			return count;
+		});
+
+		final byte[] source = ("public class Hello {\n\tpublic static void main(String[] args) {\n\t\tSystem.out.println(\"Hello\");\n\t}\n}\n").getBytes(StandardCharsets.UTF_8);
+		this.add("upload.tikaDetect", () -> TautFileUpload.populateFromData(source, "Hello.java"));
+	}
+
+	private void run(Pattern filter) throws Exception {
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		System.out.format("%-24s %14s %10s %14s%n", "Benchmark", "ops/s", "error", "B/op");
+		for(java.util.Map.Entry<String, Benchmark> e : this.benchmarks.entrySet()) {
+			if(!filter.matcher(e.getKey()).find()) {
+				continue;
+			}
+			final Benchmark benchmark = e.getValue();
+			for(int i = 0; i < WARMUP; i++) {
+				iteration(benchmark);
+			}
+
+			final double[] rates = new double[ITERATIONS];
+			long ops = 0;
+			final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+			for(int i = 0; i < ITERATIONS; i++) {
+				final long start = System.nanoTime();
+				final long n = iteration(benchmark);
+				rates[i] = n / ((System.nanoTime() - start) / 1e9);
+				ops += n;
+			}
+			final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+			final double mean = Arrays.stream(rates).average().orElse(0);
+			final double stddev = Math.sqrt(Arrays.stream(rates).map(r -> (r - mean) * (r - mean)).sum() / Math.max(1, rates.length - 1));
+			System.out.format("%-24s %14.1f %10.1f %14.1f%n", e.getKey(), mean, stddev, (double)allocated / ops);
+		}
+	}
+
+	// Runs 'benchmark' repeatedly for MILLIS milliseconds and returns how many times it ran
+	private static long iteration(Benchmark benchmark) throws Exception {
+		final long end = System.nanoTime() + MILLIS * 1000000;
+		long n = 0;
+		do {
+			final Object rtn = benchmark.run();
+			sink += System.identityHashCode(rtn);
+			n++;
+		} while(System.nanoTime() < end);
+		return n;
+	}
+}
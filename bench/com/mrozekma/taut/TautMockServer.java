@@ -0,0 +1,684 @@
+package com.mrozekma.taut;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.json.JSONException;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process stand-in for Slack, for load testing and benchmarking without a real workspace.
+// It answers the Web API routes this library uses and serves an RTM websocket; point a connection at it with
+//   new TautConnection("any-token", new TautHTTPTransport().setApiUrl(server.getApiUrl()))
+// The workspace is synthetic and generated on demand, so it can be large without using much memory:
+// 'users' users, 'channels' channels (the first is #general with every user in it), 'messagesPerChannel' messages in each channel's history,
+// and 'files' files. Messages posted through the API are stored and sent to every RTM client.
+// Every response can be delayed by 'latency' milliseconds, and each route can be limited to 'rateLimit' calls a minute,
+// after which it answers 429 with a Retry-After header like Slack does.
+// Run with -Dsun.net.httpserver.nodelay=true when measuring latency; otherwise Nagle's algorithm adds ~40ms to every response
+public class TautMockServer implements Closeable {
+	static final String TEAM_ID = "T000000";
+	static final long BASE_TS = 1500000000; // Synthetic message i is at BASE_TS + i
+
+	private int users = 100, channels = 10, files = 0;
+	private long messagesPerChannel = 1000;
+	private volatile long latency = 0; // milliseconds
+	private volatile int rateLimit = 0; // calls per route per minute; 0 for unlimited
+
+	private Optional<HttpServer> http = Optional.empty();
+	private Optional<ServerSocket> rtmSocket = Optional.empty();
+	private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger threadId = new AtomicInteger();
+
+		@Override public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "taut-mock-" + this.threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final java.util.Map<String, NavigableMap<String, Optional<JSONObject>>> stored = new ConcurrentHashMap<>(); // channel -> ts -> message (empty if deleted)
+	private final Set<String> openIms = ConcurrentHashMap.newKeySet();
+	private final AtomicLong lastPostedMicros = new AtomicLong();
+	private final List<MockRTMSocket> rtmClients = new CopyOnWriteArrayList<>();
+	private final java.util.Map<String, long[]> rateWindows = new ConcurrentHashMap<>(); // route -> {window start (ms), calls}
+	private final java.util.Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+	public int getUsers() { return this.users; }
+	public int getChannels() { return this.channels; }
+	public int getFiles() { return this.files; }
+	public long getMessagesPerChannel() { return this.messagesPerChannel; }
+	public long getLatency() { return this.latency; }
+	public int getRateLimit() { return this.rateLimit; }
+
+	public synchronized TautMockServer setUsers(int users) {
+		this.checkUnstarted();
+		this.users = Math.max(1, users);
+		return this;
+	}
+
+	public synchronized TautMockServer setChannels(int channels) {
+		this.checkUnstarted();
+		this.channels = Math.max(1, channels);
+		return this;
+	}
+
+	public synchronized TautMockServer setMessagesPerChannel(long messagesPerChannel) {
+		this.checkUnstarted();
+		this.messagesPerChannel = messagesPerChannel;
+		return this;
+	}
+
+	public synchronized TautMockServer setFiles(int files) {
+		this.checkUnstarted();
+		this.files = files;
+		return this;
+	}
+
+	public TautMockServer setLatency(long millis) {
+		this.latency = millis;
+		return this;
+	}
+
+	public TautMockServer setRateLimit(int callsPerMinute) {
+		this.rateLimit = callsPerMinute;
+		return this;
+	}
+
+	private void checkUnstarted() {
+		if(this.http.isPresent()) {
+			throw new IllegalStateException("Mock server already started");
+		}
+	}
+
+	// Listens on ephemeral loopback ports
+	public synchronized TautMockServer start() throws TautException {
+		this.checkUnstarted();
+		try {
+			final InetAddress loopback = InetAddress.getLoopbackAddress();
+			final HttpServer http = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+			http.createContext("/api/", this::handle);
+			http.setExecutor(this.executor);
+			http.start();
+			this.http = Optional.of(http);
+
+			final ServerSocket rtmSocket = new ServerSocket(0, 50, loopback);
+			this.rtmSocket = Optional.of(rtmSocket);
+			this.executor.execute(() -> this.acceptLoop(rtmSocket));
+		} catch(IOException e) {
+			throw new TautException(e);
+		}
+		return this;
+	}
+
+	public String getApiUrl() {
+		final InetSocketAddress addr = this.http.orElseThrow(() -> new IllegalStateException("Mock server not started")).getAddress();
+		return String.format("http://%s:%d/api/", addr.getHostString(), addr.getPort());
+	}
+
+	public String getRTMUrl() {
+		final ServerSocket socket = this.rtmSocket.orElseThrow(() -> new IllegalStateException("Mock server not started"));
+		return String.format("ws://%s:%d/rtm", socket.getInetAddress().getHostAddress(), socket.getLocalPort());
+	}
+
+	public long getRequestCount(String route) {
+		final AtomicLong count = this.requestCounts.get(route);
+		return (count == null) ? 0 : count.get();
+	}
+
+	@Override public synchronized void close() throws IOException {
+		this.http.ifPresent(http -> http.stop(0));
+		if(this.rtmSocket.isPresent()) {
+			this.rtmSocket.get().close();
+		}
+		this.disconnectRTMClients();
+		this.executor.shutdownNow();
+	}
+
+	// Web API
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			final String route = exchange.getRequestURI().getPath().substring("/api/".length());
+			this.requestCounts.computeIfAbsent(route, k -> new AtomicLong()).incrementAndGet();
+
+			final String body;
+			try(final Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+				final StringBuilder sb = new StringBuilder();
+				final char[] buffer = new char[4096];
+				int amt;
+				while((amt = reader.read(buffer)) >= 0) {
+					sb.append(buffer, 0, amt);
+				}
+				body = sb.toString();
+			}
+			final java.util.Map<String, String> args = new HashMap<>();
+			for(NameValuePair nvp : URLEncodedUtils.parse(body, StandardCharsets.UTF_8)) {
+				args.put(nvp.getName(), nvp.getValue());
+			}
+
+			if(this.latency > 0) {
+				try {
+					Thread.sleep(this.latency);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			final long retryAfter = this.checkRateLimit(route);
+			if(retryAfter > 0) {
+				exchange.getResponseHeaders().add("Retry-After", Long.toString(retryAfter));
+				exchange.sendResponseHeaders(429, -1);
+				return;
+			}
+
+			JSONObject res;
+			try {
+				res = this.route(route, args);
+			} catch(JSONException | IllegalArgumentException e) {
+				res = error("invalid_arguments");
+			}
+			exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(200, 0);
+			try(final Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+				res.write(writer);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// Seconds until 'route' can be called again, or 0 if it can be called now
+	private long checkRateLimit(String route) {
+		final int limit = this.rateLimit;
+		if(limit <= 0) {
+			return 0;
+		}
+		final long[] window = this.rateWindows.computeIfAbsent(route, k -> new long[2]);
+		synchronized(window) {
+			final long now = System.currentTimeMillis();
+			if(now - window[0] >= 60000) {
+				window[0] = now;
+				window[1] = 0;
+			}
+			if(++window[1] > limit) {
+				return Math.max(1, (window[0] + 60000 - now + 999) / 1000);
+			}
+			return 0;
+		}
+	}
+
+	private static JSONObject ok() {
+		return new JSONObject().put("ok", true);
+	}
+
+	private static JSONObject error(String error) {
+		return new JSONObject().put("ok", false).put("error", error);
+	}
+
+	private JSONObject route(String route, java.util.Map<String, String> args) {
+		switch(route) {
+		case "api.test":
+			return ok();
+		case "auth.test":
+			return ok().put("user_id", userId(0)).put("user", userName(0)).put("team_id", TEAM_ID).put("team", "mock");
+		case "auth.revoke":
+			return ok().put("revoked", true);
+
+		case "rtm.start": {
+			final JSONArray users = new JSONArray(), channels = new JSONArray(), ims = new JSONArray();
+			for(int i = 0; i < this.users; i++) {
+				users.put(this.userJSON(i));
+			}
+			for(int i = 0; i < this.channels; i++) {
+				channels.put(this.channelJSON(i));
+			}
+			for(String im : this.openIms) {
+				ims.put(this.imJSON(im));
+			}
+			return this.rtmConnect().put("users", users).put("channels", channels).put("groups", new JSONArray()).put("ims", ims).put("bots", new JSONArray());
+		}
+		case "rtm.connect":
+			return this.rtmConnect();
+
+		case "users.list": {
+			final JSONArray members = new JSONArray();
+			for(int i = 0; i < this.users; i++) {
+				members.put(this.userJSON(i));
+			}
+			return ok().put("members", members);
+		}
+		case "users.info": {
+			final int idx = this.index(args.get("user"), 'U', this.users);
+			return (idx < 0) ? error("user_not_found") : ok().put("user", this.userJSON(idx));
+		}
+		case "bots.info":
+			return error("bot_not_found");
+
+		case "channels.list": {
+			final JSONArray channels = new JSONArray();
+			for(int i = 0; i < this.channels; i++) {
+				channels.put(this.channelJSON(i));
+			}
+			return ok().put("channels", channels);
+		}
+		case "channels.info": {
+			final int idx = this.index(args.get("channel"), 'C', this.channels);
+			return (idx < 0) ? error("channel_not_found") : ok().put("channel", this.channelJSON(idx));
+		}
+		case "groups.list":
+			return ok().put("groups", new JSONArray());
+		case "groups.info":
+			return error("channel_not_found");
+
+		case "im.list": {
+			final JSONArray ims = new JSONArray();
+			for(String im : this.openIms) {
+				ims.put(this.imJSON(im));
+			}
+			return ok().put("ims", ims);
+		}
+		case "im.open": {
+			final int idx = this.index(args.get("user"), 'U', this.users);
+			if(idx < 0) {
+				return error("user_not_found");
+			}
+			final String id = "D" + args.get("user").substring(1);
+			this.openIms.add(id);
+			return ok().put("channel", this.imJSON(id));
+		}
+		case "im.close":
+			this.openIms.remove(args.get("channel"));
+			return ok();
+
+		case "channels.history":
+		case "groups.history":
+		case "im.history":
+			return this.history(args);
+
+		case "chat.postMessage":
+		case "chat.meMessage": {
+			final String channel = args.get("channel");
+			if(!this.isChannel(channel)) {
+				return error("channel_not_found");
+			}
+			final String ts = this.nextTs();
+			final JSONObject message = new JSONObject().put("type", "message").put("user", userId(0)).put("text", args.getOrDefault("text", "")).put("ts", ts);
+			if(route.equals("chat.meMessage")) {
+				message.put("subtype", "me_message");
+			}
+			this.store(channel).put(ts, Optional.of(message));
+			this.broadcast(new JSONObject(message.toString()).put("channel", channel), Optional.empty());
+			final JSONObject res = ok().put("channel", channel).put("ts", ts);
+			return route.equals("chat.postMessage") ? res.put("message", message) : res;
+		}
+		case "chat.update": {
+			final String channel = args.get("channel"), ts = normalizeTs(args.get("ts"));
+			final Optional<JSONObject> existing = this.find(channel, ts);
+			if(!existing.isPresent()) {
+				return error("message_not_found");
+			}
+			final JSONObject message = new JSONObject(existing.get().toString())
+					.put("text", args.getOrDefault("text", ""))
+					.put("edited", new JSONObject().put("user", userId(0)).put("ts", this.nextTs()));
+			this.store(channel).put(ts, Optional.of(message));
+			return ok().put("channel", channel).put("ts", ts).put("text", message.getString("text"));
+		}
+		case "chat.delete": {
+			final String channel = args.get("channel"), ts = normalizeTs(args.get("ts"));
+			if(!this.find(channel, ts).isPresent()) {
+				return error("message_not_found");
+			}
+			this.store(channel).put(ts, Optional.empty());
+			return ok().put("channel", channel).put("ts", ts);
+		}
+
+		case "files.list": {
+			final int count = Math.min(1000, Integer.parseInt(args.getOrDefault("count", "100")));
+			final int page = Math.max(1, Integer.parseInt(args.getOrDefault("page", "1")));
+			final int pages = Math.max(1, (this.files + count - 1) / count);
+			final JSONArray files = new JSONArray();
+			for(int i = (page - 1) * count; i < Math.min(this.files, page * count); i++) {
+				files.put(this.fileJSON(i));
+			}
+			return ok().put("files", files).put("paging", new JSONObject().put("count", count).put("total", this.files).put("page", page).put("pages", pages));
+		}
+		case "files.info": {
+			final int idx = this.index(args.get("file"), 'F', this.files);
+			return (idx < 0) ? error("file_not_found") : ok().put("file", this.fileJSON(idx)).put("comments", new JSONArray());
+		}
+
+		case "emoji.list":
+			return ok().put("emoji", new JSONObject().put("mock", "https://example.com/mock.png").put("mock_alias", "alias:mock"));
+
+		default:
+			return error("unknown_method");
+		}
+	}
+
+	private JSONObject rtmConnect() {
+		return ok()
+				.put("url", this.getRTMUrl())
+				.put("self", new JSONObject().put("id", userId(0)).put("name", userName(0)))
+				.put("team", new JSONObject().put("id", TEAM_ID).put("name", "mock").put("domain", "mock"));
+	}
+
+	// Synthetic workspace
+
+	private static String userId(int idx) {
+		return String.format("U%06d", idx);
+	}
+
+	private static String userName(int idx) {
+		return "user" + idx;
+	}
+
+	private static String channelId(int idx) {
+		return String.format("C%06d", idx);
+	}
+
+	// Index of 'id' if it's of the form <prefix><number> and in range, otherwise -1
+	private int index(String id, char prefix, int count) {
+		if(id == null || id.length() < 2 || id.charAt(0) != prefix) {
+			return -1;
+		}
+		try {
+			final int idx = Integer.parseInt(id.substring(1));
+			return (idx < count) ? idx : -1;
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private boolean isChannel(String id) {
+		return this.index(id, 'C', this.channels) >= 0 || (id != null && this.openIms.contains(id));
+	}
+
+	private JSONObject userJSON(int idx) {
+		return new JSONObject()
+				.put("id", userId(idx))
+				.put("name", userName(idx))
+				.put("deleted", false)
+				.put("color", "9f69e7")
+				.put("profile", new JSONObject()
+						.put("first_name", "User")
+						.put("last_name", Integer.toString(idx))
+						.put("real_name", "User " + idx)
+						.put("email", userName(idx) + "@example.com")
+						.put("image_48", "https://example.com/" + userName(idx) + "_48.png"));
+	}
+
+	private JSONObject channelJSON(int idx) {
+		final JSONArray members = new JSONArray();
+		// #general has everyone, the rest have the first hundred users
+		for(int i = 0; i < ((idx == 0) ? this.users : Math.min(this.users, 100)); i++) {
+			members.put(userId(i));
+		}
+		final JSONObject blank = new JSONObject().put("value", "").put("creator", "").put("last_set", 0);
+		return new JSONObject()
+				.put("id", channelId(idx))
+				.put("name", (idx == 0) ? "general" : "channel" + idx)
+				.put("created", BASE_TS)
+				.put("creator", userId(0))
+				.put("is_archived", false)
+				.put("is_general", idx == 0)
+				.put("is_member", true)
+				.put("members", members)
+				.put("topic", blank)
+				.put("purpose", new JSONObject(blank.toString()));
+	}
+
+	private JSONObject imJSON(String id) {
+		return new JSONObject()
+				.put("id", id)
+				.put("is_im", true)
+				.put("user", "U" + id.substring(1))
+				.put("created", BASE_TS)
+				.put("last_read", "0000000000.000000");
+	}
+
+	private JSONObject fileJSON(int idx) {
+		return new JSONObject()
+				.put("id", String.format("F%06d", idx))
+				.put("mode", "hosted")
+				.put("name", "file" + idx + ".txt")
+				.put("title", "File " + idx)
+				.put("mimetype", "text/plain")
+				.put("filetype", "text")
+				.put("pretty_type", "Plain Text")
+				.put("permalink", "https://example.com/file" + idx)
+				.put("created", BASE_TS + idx)
+				.put("size", 1024)
+				.put("comments_count", 0)
+				.put("user", userId(idx % this.users))
+				.put("channels", new JSONArray().put(channelId(idx % this.channels)))
+				.put("groups", new JSONArray())
+				.put("pinned_to", new JSONArray());
+	}
+
+	private static String formatTs(long seconds, long micros) {
+		return String.format("%010d.%06d", seconds, micros);
+	}
+
+	// Rewrites any timestamp as seconds.micros so timestamps compare correctly as strings
+	private static String normalizeTs(String ts) {
+		final BigDecimal value = new BigDecimal(ts).setScale(6, RoundingMode.DOWN);
+		return formatTs(value.longValue(), value.remainder(BigDecimal.ONE).movePointRight(6).longValue());
+	}
+
+	private static JSONObject syntheticMessage(String channel, long idx) {
+		return new JSONObject()
+				.put("type", "message")
+				.put("user", userId((int)(idx % 100)))
+				.put("text", String.format("Message %d in %s", idx, channel))
+				.put("ts", formatTs(BASE_TS + idx, 0));
+	}
+
+	// Posted messages come after all the synthetic history
+	private String nextTs() {
+		final long floor = (BASE_TS + this.messagesPerChannel) * 1000000;
+		final long now = System.currentTimeMillis() * 1000;
+		final long micros = this.lastPostedMicros.updateAndGet(last -> Math.max(last + 1, Math.max(now, floor)));
+		return formatTs(micros / 1000000, micros % 1000000);
+	}
+
+	private NavigableMap<String, Optional<JSONObject>> store(String channel) {
+		return this.stored.computeIfAbsent(channel, k -> new ConcurrentSkipListMap<>());
+	}
+
+	private Optional<JSONObject> find(String channel, String ts) {
+		if(channel == null || !this.isChannel(channel)) {
+			return Optional.empty();
+		}
+		final Optional<JSONObject> stored = this.store(channel).get(ts);
+		if(stored != null) {
+			return stored;
+		}
+		final BigDecimal offset = new BigDecimal(ts).subtract(BigDecimal.valueOf(BASE_TS));
+		if(channel.startsWith("C") && offset.signum() >= 0 && offset.stripTrailingZeros().scale() <= 0 && offset.longValue() < this.messagesPerChannel) {
+			return Optional.of(syntheticMessage(channel, offset.longValue()));
+		}
+		return Optional.empty();
+	}
+
+	// Newest first, merging the synthetic history with anything posted, edited or deleted through the API
+	private JSONObject history(java.util.Map<String, String> args) {
+		final String channel = args.get("channel");
+		if(!this.isChannel(channel)) {
+			return error("channel_not_found");
+		}
+		final boolean inclusive = args.getOrDefault("inclusive", "0").equals("1");
+		final int count = Math.max(1, Math.min(1000, Integer.parseInt(args.getOrDefault("count", "100"))));
+		final String latest = args.containsKey("latest") ? normalizeTs(args.get("latest")) : formatTs(9999999999L, 999999);
+		final String oldest = args.containsKey("oldest") ? normalizeTs(args.get("oldest")) : formatTs(0, 0);
+
+		// Synthetic messages only exist in public channels
+		long hi = -1, lo = 0;
+		if(channel.startsWith("C") && this.messagesPerChannel > 0) {
+			final BigDecimal latestOffset = new BigDecimal(latest).subtract(BigDecimal.valueOf(BASE_TS));
+			final BigDecimal oldestOffset = new BigDecimal(oldest).subtract(BigDecimal.valueOf(BASE_TS));
+			hi = inclusive ? latestOffset.setScale(0, RoundingMode.FLOOR).longValue() : latestOffset.setScale(0, RoundingMode.CEILING).longValue() - 1;
+			lo = inclusive ? oldestOffset.setScale(0, RoundingMode.CEILING).longValue() : oldestOffset.setScale(0, RoundingMode.FLOOR).longValue() + 1;
+			hi = Math.min(hi, this.messagesPerChannel - 1);
+			lo = Math.max(lo, 0);
+		}
+
+		final NavigableMap<String, Optional<JSONObject>> store = this.store(channel);
+		final Iterator<java.util.Map.Entry<String, Optional<JSONObject>>> stored;
+		if(latest.compareTo(oldest) < 0) {
+			stored = Collections.emptyIterator();
+		} else {
+			stored = store.subMap(oldest, inclusive, latest, inclusive).descendingMap().entrySet().iterator();
+		}
+		java.util.Map.Entry<String, Optional<JSONObject>> nextStored = stored.hasNext() ? stored.next() : null;
+
+		final JSONArray messages = new JSONArray();
+		boolean hasMore = false;
+		while(nextStored != null || hi >= lo) {
+			final String syntheticTs = (hi >= lo) ? formatTs(BASE_TS + hi, 0) : null;
+			final Optional<JSONObject> message;
+			if(nextStored != null && (syntheticTs == null || nextStored.getKey().compareTo(syntheticTs) >= 0)) {
+				if(nextStored.getKey().equals(syntheticTs)) {
+					// Edited or deleted synthetic message
+					hi--;
+				}
+				message = nextStored.getValue();
+				nextStored = stored.hasNext() ? stored.next() : null;
+			} else {
+				message = Optional.of(syntheticMessage(channel, hi--));
+			}
+			if(message.isPresent()) {
+				if(messages.length() == count) {
+					hasMore = true;
+					break;
+				}
+				messages.put(message.get());
+			}
+		}
+		return ok().put("messages", messages).put("has_more", hasMore).put("latest", latest);
+	}
+
+	// RTM
+
+	private void acceptLoop(ServerSocket server) {
+		while(!server.isClosed()) {
+			final Socket socket;
+			try {
+				socket = server.accept();
+			} catch(IOException e) {
+				return;
+			}
+			this.executor.execute(() -> this.serve(socket));
+		}
+	}
+
+	private void serve(Socket socket) {
+		final MockRTMSocket client;
+		try {
+			client = MockRTMSocket.accept(socket);
+			client.send(new JSONObject().put("type", "hello").toString());
+			client.send(new JSONObject().put("type", "reconnect_url").put("url", this.getRTMUrl()).toString());
+		} catch(IOException e) {
+			return;
+		}
+		this.rtmClients.add(client);
+		try {
+			client.readLoop(frame -> this.onRTMFrame(client, frame));
+		} finally {
+			this.rtmClients.remove(client);
+		}
+	}
+
+	private void onRTMFrame(MockRTMSocket client, String frame) {
+		try {
+			final JSONObject json = new JSONObject(frame);
+			final int id = json.optInt("id", 0);
+			switch(json.optString("type", "")) {
+			case "ping":
+				client.send(new JSONObject().put("type", "pong").put("reply_to", id).toString());
+				break;
+			case "message": {
+				final String channel = json.optString("channel", "");
+				if(!this.isChannel(channel)) {
+					client.send(new JSONObject().put("ok", false).put("reply_to", id).put("error", new JSONObject().put("code", 2).put("msg", "channel_not_found")).toString());
+					break;
+				}
+				final String ts = this.nextTs();
+				final JSONObject message = new JSONObject().put("type", "message").put("user", userId(0)).put("text", json.optString("text", "")).put("ts", ts);
+				this.store(channel).put(ts, Optional.of(message));
+				client.send(new JSONObject().put("ok", true).put("reply_to", id).put("ts", ts).put("text", message.getString("text")).toString());
+				this.broadcast(new JSONObject(message.toString()).put("channel", channel), Optional.of(client));
+				break; }
+			}
+		} catch(JSONException | IOException e) {
+			// Ignore malformed frames, like Slack does
+		}
+	}
+
+	public int getRTMClientCount() {
+		return this.rtmClients.size();
+	}
+
+	// Sends 'event' to every connected RTM client
+	public void broadcast(JSONObject event) {
+		this.broadcast(event, Optional.empty());
+	}
+
+	private void broadcast(JSONObject event, Optional<MockRTMSocket> except) {
+		final String frame = event.toString();
+		for(MockRTMSocket client : this.rtmClients) {
+			if(!except.isPresent() || except.get() != client) {
+				try {
+					client.send(frame);
+				} catch(IOException e) {
+					this.rtmClients.remove(client);
+				}
+			}
+		}
+	}
+
+	// Sends 'count' events to every RTM client as fast as possible: a realistic mix of mostly user_typing and presence_change,
+	// with a message every tenth event, spread across the channels
+	public void generateEvents(int count) {
+		for(int i = 0; i < count; i++) {
+			final String channel = channelId(i % this.channels), user = userId(i % this.users);
+			final JSONObject event;
+			switch(i % 10) {
+			case 0:
+				event = new JSONObject().put("type", "message").put("channel", channel).put("user", user).put("text", "Event " + i).put("ts", this.nextTs());
+				break;
+			case 1:
+			case 2:
+			case 3:
+				event = new JSONObject().put("type", "presence_change").put("user", user).put("presence", (i % 2 == 0) ? "active" : "away");
+				break;
+			default:
+				event = new JSONObject().put("type", "user_typing").put("channel", channel).put("user", user);
+				break;
+			}
+			this.broadcast(event);
+		}
+	}
+
+	// Drops every RTM client without warning, to exercise reconnects
+	public void disconnectRTMClients() {
+		for(MockRTMSocket client : this.rtmClients) {
+			try {
+				client.close();
+			} catch(IOException e) {}
+		}
+		this.rtmClients.clear();
+	}
+}
@@ -0,0 +1,434 @@
+package com.mrozekma.taut;
+
+import org.json.JSONException;
+import org.json.JSONString;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+// Hand-written replacement for org.json's tokener. It reads straight out of a char buffer instead of going through next()/back() a character at a time,
+// and copies strings out of the buffer in one go when they have no escapes. Unlike org.json it only accepts standard JSON
+// (no unquoted strings, single quotes or comments), which is all Slack sends.
+// Values come out the same as org.json's: integers are Integer or Long, other numbers Double, null is JSONObject.NULL
+class FastJSONCodec implements TautJSONCodec {
+	private static class Parser {
+		private final Reader reader; // null when parsing a string
+		private char[] buf;
+		private int pos = 0, limit;
+		private long offset = 0; // Of buf[0] in the input, for error messages
+		private final StringBuilder sb = new StringBuilder();
+
+		Parser(String text) {
+			this.reader = null;
+			this.buf = text.toCharArray();
+			this.limit = this.buf.length;
+		}
+
+		Parser(Reader reader) {
+			this.reader = reader;
+			this.buf = new char[8192];
+			this.limit = 0;
+		}
+
+		private JSONException error(String message) {
+			return new JSONException(String.format("%s at character %d", message, this.offset + this.pos));
+		}
+
+		private boolean fill() throws JSONException {
+			if(this.reader == null) {
+				return false;
+			}
+			try {
+				final int amt = this.reader.read(this.buf, 0, this.buf.length);
+				if(amt <= 0) {
+					return false;
+				}
+				this.offset += this.limit;
+				this.pos = 0;
+				this.limit = amt;
+				return true;
+			} catch(IOException e) {
+				throw new JSONException(e);
+			}
+		}
+
+		// Next non-whitespace character without consuming it, or -1 at the end of the input
+		private int peekClean() throws JSONException {
+			while(true) {
+				if(this.pos >= this.limit && !this.fill()) {
+					return -1;
+				}
+				final char c = this.buf[this.pos];
+				if(c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+					return c;
+				}
+				this.pos++;
+			}
+		}
+
+		private char next() throws JSONException {
+			if(this.pos >= this.limit && !this.fill()) {
+				throw this.error("Unexpected end of input");
+			}
+			return this.buf[this.pos++];
+		}
+
+		private void expect(char c) throws JSONException {
+			if(this.peekClean() != c) {
+				throw this.error(String.format("Expected '%c'", c));
+			}
+			this.pos++;
+		}
+
+		Object value() throws JSONException {
+			final int c = this.peekClean();
+			switch(c) {
+			case '{':
+				return this.object(null, null);
+			case '[':
+				return this.array();
+			case '"':
+				this.pos++;
+				return this.string();
+			case 't':
+				this.literal("true");
+				return Boolean.TRUE;
+			case 'f':
+				this.literal("false");
+				return Boolean.FALSE;
+			case 'n':
+				this.literal("null");
+				return JSONObject.NULL;
+			case -1:
+				throw this.error("Unexpected end of input");
+			default:
+				if(c == '-' || (c >= '0' && c <= '9')) {
+					return this.number();
+				}
+				throw this.error(String.format("Unexpected character '%c'", (char)c));
+			}
+		}
+
+		// If 'arrayKey' is set, that key's array is passed to 'fn' element by element instead of being stored
+		<T> JSONObject object(String arrayKey, Consumer<T> fn) throws JSONException {
+			this.expect('{');
+			final JSONObject rtn = new JSONObject();
+			if(this.peekClean() == '}') {
+				this.pos++;
+				return rtn;
+			}
+			while(true) {
+				this.expect('"');
+				final String key = this.string();
+				this.expect(':');
+				if(arrayKey != null && key.equals(arrayKey)) {
+					this.streamArray(fn);
+				} else {
+					rtn.putOnce(key, this.value());
+				}
+				switch(this.peekClean()) {
+				case ',':
+					this.pos++;
+					break;
+				case '}':
+					this.pos++;
+					return rtn;
+				default:
+					throw this.error("Expected ',' or '}'");
+				}
+			}
+		}
+
+		JSONArray array() throws JSONException {
+			final JSONArray rtn = new JSONArray();
+			this.elements(rtn::put);
+			return rtn;
+		}
+
+		private <T> void streamArray(Consumer<T> fn) throws JSONException {
+			if(this.peekClean() != '[') {
+				// Not actually an array (probably null); there's nothing to stream
+				this.value();
+				return;
+			}
+			// The caller picks T to match the array's elements (JSONObject for every list we stream), same as with JSONObject.parseStreaming().
+			// If it's wrong 'fn' throws ClassCastException on the first element, which is no worse than a cast here would do
+			@SuppressWarnings("unchecked") final Consumer<Object> elementFn = (Consumer<Object>)fn;
+			this.elements(elementFn);
+		}
+
+		private void elements(Consumer<Object> fn) throws JSONException {
+			this.expect('[');
+			if(this.peekClean() == ']') {
+				this.pos++;
+				return;
+			}
+			while(true) {
+				fn.accept(this.value());
+				switch(this.peekClean()) {
+				case ',':
+					this.pos++;
+					break;
+				case ']':
+					this.pos++;
+					return;
+				default:
+					throw this.error("Expected ',' or ']'");
+				}
+			}
+		}
+
+		// The opening quote has already been consumed
+		private String string() throws JSONException {
+			// Fast path: no escapes and the whole string is in the buffer
+			for(int i = this.pos; i < this.limit; i++) {
+				final char c = this.buf[i];
+				if(c == '"') {
+					final String rtn = new String(this.buf, this.pos, i - this.pos);
+					this.pos = i + 1;
+					return rtn;
+				} else if(c == '\\') {
+					break;
+				}
+			}
+
+			this.sb.setLength(0);
+			while(true) {
+				final char c = this.next();
+				switch(c) {
+				case '"':
+					return this.sb.toString();
+				case '\\': {
+					final char e = this.next();
+					switch(e) {
+					case '"':
+					case '\\':
+					case '/':
+						this.sb.append(e);
+						break;
+					case 'b':
+						this.sb.append('\b');
+						break;
+					case 'f':
+						this.sb.append('\f');
+						break;
+					case 'n':
+						this.sb.append('\n');
+						break;
+					case 'r':
+						this.sb.append('\r');
+						break;
+					case 't':
+						this.sb.append('\t');
+						break;
+					case 'u': {
+						int code = 0;
+						for(int i = 0; i < 4; i++) {
+							final int digit = Character.digit(this.next(), 16);
+							if(digit < 0) {
+								throw this.error("Bad \\u escape");
+							}
+							code = (code << 4) | digit;
+						}
+						this.sb.append((char)code);
+						break; }
+					default:
+						throw this.error("Bad escape");
+					}
+					break; }
+				default:
+					this.sb.append(c);
+				}
+			}
+		}
+
+		private void literal(String word) throws JSONException {
+			for(int i = 0; i < word.length(); i++) {
+				if(this.next() != word.charAt(i)) {
+					throw this.error("Expected " + word);
+				}
+			}
+		}
+
+		// Next character without consuming it or skipping whitespace, or -1 at the end of the input
+		private int peek() throws JSONException {
+			return (this.pos >= this.limit && !this.fill()) ? -1 : this.buf[this.pos];
+		}
+
+		private void take() {
+			this.sb.append(this.buf[this.pos++]);
+		}
+
+		// Consumes a run of digits into sb and returns how many there were
+		private int digits() throws JSONException {
+			int count = 0;
+			for(int c = this.peek(); c >= '0' && c <= '9'; c = this.peek()) {
+				this.take();
+				count++;
+			}
+			return count;
+		}
+
+		// -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?  Anything left over (e.g. the "-2" of "1-2") is rejected by whoever called value()
+		private Object number() throws JSONException {
+			this.sb.setLength(0);
+			boolean decimal = false;
+			if(this.peek() == '-') {
+				this.take();
+			}
+			if(this.peek() == '0') {
+				this.take();
+			} else if(this.digits() == 0) {
+				throw this.error("Bad number");
+			}
+			if(this.peek() == '.') {
+				decimal = true;
+				this.take();
+				if(this.digits() == 0) {
+					throw this.error("Bad number");
+				}
+			}
+			if(this.peek() == 'e' || this.peek() == 'E') {
+				decimal = true;
+				this.take();
+				if(this.peek() == '+' || this.peek() == '-') {
+					this.take();
+				}
+				if(this.digits() == 0) {
+					throw this.error("Bad number");
+				}
+			}
+
+			final String text = this.sb.toString();
+			if(decimal) {
+				final Double d = Double.valueOf(text);
+				// org.json keeps numbers too big for a double as strings
+				return (d.isInfinite() || d.isNaN()) ? text : d;
+			}
+			try {
+				final long l = Long.parseLong(text);
+				if(l == 0 && text.startsWith("-")) {
+					// org.json keeps "-0" as a string
+					return text;
+				}
+				return (l == (int)l) ? (Object)(int)l : (Object)l;
+			} catch(NumberFormatException e) {
+				// Too big for a long; org.json keeps these as strings
+				return text;
+			}
+		}
+
+		void end() throws JSONException {
+			if(this.peekClean() != -1) {
+				throw this.error("Unexpected data after the end of the document");
+			}
+		}
+	}
+
+	@Override public JSONObject parse(Reader reader) throws JSONException {
+		return parse(new Parser(reader));
+	}
+
+	@Override public JSONObject parse(String text) throws JSONException {
+		return parse(new Parser(text));
+	}
+
+	private static JSONObject parse(Parser parser) throws JSONException {
+		final JSONObject rtn = parser.object(null, null);
+		parser.end();
+		return rtn;
+	}
+
+	@Override public <T> JSONObject parseStreaming(Reader reader, String arrayKey, Consumer<T> fn) throws JSONException {
+		return new Parser(reader).object(arrayKey, fn);
+	}
+
+	@Override public void write(JSONObject json, Writer writer) throws IOException {
+		writer.write(this.toString(json));
+	}
+
+	@Override public String toString(JSONObject json) {
+		final StringBuilder sb = new StringBuilder(256);
+		writeValue(json, sb);
+		return sb.toString();
+	}
+
+	private static void writeValue(Object value, StringBuilder sb) throws JSONException {
+		if(value == null || value == JSONObject.NULL) {
+			sb.append("null");
+		} else if(value instanceof String) {
+			quote((String)value, sb);
+		} else if(value instanceof org.json.JSONObject) {
+			final org.json.JSONObject obj = (org.json.JSONObject)value;
+			sb.append('{');
+			boolean first = true;
+			for(Iterator<?> iter = obj.keys(); iter.hasNext(); ) {
+				final String key = iter.next().toString();
+				if(!first) {
+					sb.append(',');
+				}
+				first = false;
+				quote(key, sb);
+				sb.append(':');
+				writeValue(obj.opt(key), sb);
+			}
+			sb.append('}');
+		} else if(value instanceof org.json.JSONArray) {
+			final org.json.JSONArray arr = (org.json.JSONArray)value;
+			sb.append('[');
+			for(int i = 0; i < arr.length(); i++) {
+				if(i > 0) {
+					sb.append(',');
+				}
+				writeValue(arr.opt(i), sb);
+			}
+			sb.append(']');
+		} else if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			sb.append(value.toString());
+		} else if(value instanceof Number) {
+			sb.append(JSONObject.numberToString((Number)value));
+		} else if(value instanceof Boolean) {
+			sb.append(value.toString());
+		} else if(value instanceof JSONString) {
+			sb.append(((JSONString)value).toJSONString());
+		} else {
+			// Maps, collections, arrays and beans; rare enough to leave to org.json
+			sb.append(JSONObject.valueToString(value));
+		}
+	}
+
+	private static void quote(String s, StringBuilder sb) {
+		sb.append('"');
+		final int len = s.length();
+		int start = 0;
+		for(int i = 0; i < len; i++) {
+			final char c = s.charAt(i);
+			final String escape;
+			if(c == '"') {
+				escape = "\\\"";
+			} else if(c == '\\') {
+				escape = "\\\\";
+			} else if(c == '/' && i > 0 && s.charAt(i - 1) == '<') {
+				// Same as org.json, so a value can't close a <script> tag
+				escape = "\\/";
+			} else if(c < ' ') {
+				switch(c) {
+				case '\b': escape = "\\b"; break;
+				case '\f': escape = "\\f"; break;
+				case '\n': escape = "\\n"; break;
+				case '\r': escape = "\\r"; break;
+				case '\t': escape = "\\t"; break;
+				default: escape = String.format("\\u%04x", (int)c);
+				}
+			} else {
+				continue;
+			}
+			sb.append(s, start, i).append(escape);
+			start = i + 1;
+		}
+		sb.append(s, start, len).append('"');
+	}
+}
@@ -71,13 +71,13 @@ public class FileIterable implements Iterable<TautFile> {
 			private void doRequest() throws RuntimeException {
 				this.request.put("page", this.nextPage);
 				final JSONObject res;
+				this.files = new LinkedList<>();
 				try {
-					res = conn.post("files.list", request);
+					res = conn.postStreaming("files.list", request, "files", (JSONObject file) -> this.files.add(TautFile.fromJSON(conn, file)));
 				} catch(TautException e) {
 					// Can't throw TautException because we need to conform to the Iterable interface
 					throw new RuntimeException(e);
 				}
-				this.files = new LinkedList<>(res.<JSONObject>streamArray("files").map(file -> new TautFile(conn, file)).collect(Collectors.toList()));
 				this.pages = res.getJSONObject("paging").getInt("pages");
 				this.nextPage = res.getJSONObject("paging").getInt("page") + 1;
 			}
@@ -11,6 +11,7 @@ public class HistoryIterable implements Iterable<TautMessage> {
 	private final boolean inclusive;
 	private final int count;
 	private final boolean unreads;
+	private boolean parallel = false;
 
 	HistoryIterable(TautAbstractChannel channel, Optional<Date> latest, Optional<Date> oldest, boolean inclusive, int count, boolean unreads) throws TautException {
 		this.conn = channel.conn.historyConnection;
@@ -22,6 +23,12 @@ public class HistoryIterable implements Iterable<TautMessage> {
 		this.unreads = unreads;
 	}
 
+	// Download each page whole and build its messages in parallel. Only worth it with a large 'count'
+	public HistoryIterable setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
 	@Override public Iterator<TautMessage> iterator() {
 		return new Iterator<TautMessage>() {
 			private final JSONObject request = new JSONObject().putOpt("latest", latest).putOpt("oldest", oldest).put("inclusive", inclusive ? 1 : 0).put("count", count).put("unreads", unreads ? 1 : 0);
@@ -34,13 +41,18 @@ public class HistoryIterable implements Iterable<TautMessage> {
 
 			private void doRequest() throws RuntimeException {
 				final JSONObject res;
+				this.messages = new LinkedList<>();
 				try {
-					res = channel.post(channel.getRoutePrefix() + ".history", request);
+					if(parallel) {
+						res = channel.post(channel.getRoutePrefix() + ".history", request);
+						this.messages = res.getJSONArray("messages").<JSONObject>stream(true).map(message -> new TautMessage(channel, message)).collect(Collectors.toCollection(LinkedList::new));
+					} else {
+						res = channel.postStreaming(channel.getRoutePrefix() + ".history", request, "messages", (JSONObject message) -> this.messages.add(new TautMessage(channel, message)));
+					}
 				} catch(TautException e) {
 					// Can't throw TautException because we need to conform to the Iterable interface
 					throw new RuntimeException(e);
 				}
-				this.messages = new LinkedList<>(res.<JSONObject>streamArray("messages").map(message -> new TautMessage(channel, message)).collect(Collectors.toList()));
 				this.nextRequestLatest = res.optBoolean("has_more", false) ? Optional.of(this.messages.getLast().getCurrent().getTs()) : Optional.empty();
 			}
 
@@ -51,10 +63,9 @@ public class HistoryIterable implements Iterable<TautMessage> {
 			@Override public TautMessage next() {
 				if(this.messages.isEmpty()) {
 					if(this.nextRequestLatest.isPresent()) {
-						// Next request
-						this.request.put("latest", this.nextRequestLatest.get());
+						// Next request. The last message we got is the new 'latest', so it mustn't be included again
+						this.request.put("latest", this.nextRequestLatest.get()).put("inclusive", 0);
 						this.doRequest();
-						this.nextRequestLatest = Optional.empty();
 					} else {
 						throw new NoSuchElementException();
 					}
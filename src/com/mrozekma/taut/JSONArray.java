@@ -10,6 +10,9 @@ import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class JSONArray extends org.json.JSONArray {
+	// Arrays smaller than this aren't worth splitting across threads
+	static final int PARALLEL_THRESHOLD = 1000;
+
 	private static class JSONArraySpliterator<T> implements Spliterator<T> {
 		private final JSONArray arr;
 		private int pos, len;
@@ -29,7 +32,7 @@ public class JSONArray extends org.json.JSONArray {
 		}
 
 		@Override public boolean tryAdvance(Consumer<? super T> consumer) {
-			if(this.pos == this.arr.length()) {
+			if(this.pos >= this.len) {
 				return false;
 			}
 			try {
@@ -40,15 +43,16 @@ public class JSONArray extends org.json.JSONArray {
 			}
 		}
 
+		// The returned half has to be the prefix so ORDERED streams keep their order
 		@Override public Spliterator<T> trySplit() {
-			final int newPos = this.pos + (this.len - this.pos) / 2;
-			if(newPos == this.pos) {
+			final int mid = this.pos + (this.len - this.pos) / 2;
+			if(mid == this.pos) {
 				return null;
 			}
 			try {
-				return new JSONArraySpliterator(this.arr, newPos, this.len);
+				return new JSONArraySpliterator<>(this.arr, this.pos, mid);
 			} finally {
-				this.len = newPos;
+				this.pos = mid;
 			}
 		}
 
@@ -57,22 +61,35 @@ public class JSONArray extends org.json.JSONArray {
 		}
 
 		@Override public int characteristics() {
-			return ORDERED | SIZED | SUBSIZED;
+			// JSON nulls are JSONObject.NULL, not null
+			return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
 		}
 	}
 
 	public JSONArray(String source) throws JSONException {
-		super(source);
+		super(new JSONTokener(source));
+	}
+
+	public JSONArray() {}
+
+	public JSONArray(JSONTokener tokener) throws JSONException {
+		super(tokener);
 	}
 
+	// org.json's version stores the elements directly instead of going through put(), so they wouldn't be converted
 	public JSONArray(Collection collection) throws JSONException {
-		super(collection);
+		if(collection != null) {
+			for(Object value : collection) {
+				this.put(JSONObject.wrap(value));
+			}
+		}
 	}
 
 	public JSONArray(Object array) throws JSONException {
 		super(array);
 	}
 
+	// Nested values are shared with 'wrap' unless they're org.json nodes, which are converted
 	public JSONArray(org.json.JSONArray wrap) throws JSONException {
 		for(int i = 0; i < wrap.length(); i++) {
 			this.put(wrap.get(i));
@@ -84,34 +101,43 @@ public class JSONArray extends org.json.JSONArray {
 	}
 
 	public JSONArray optJSONArray(int index) {
-		try {
-			return new JSONArray(super.optJSONArray(index));
-		} catch(JSONException e) {
-			return null;
-		}
+		return (this.opt(index) instanceof org.json.JSONArray) ? this.getJSONArray(index) : null;
 	}
 
 	public JSONObject optJSONObject(int index) {
-		try {
-			return new JSONObject(super.optJSONObject(index));
-		} catch(JSONException e) {
-			return null;
-		}
+		return (this.opt(index) instanceof org.json.JSONObject) ? this.getJSONObject(index) : null;
 	}
 
 	public JSONObject getJSONObject(int index) throws JSONException {
-		return new JSONObject(super.getJSONObject(index));
+		final Object rtn = this.get(index);
+		if(rtn instanceof JSONObject) {
+			return (JSONObject)rtn;
+		}
+		throw new JSONException("JSONArray[" + index + "] is not a JSONObject.");
 	}
 
 	public JSONArray getJSONArray(int index) throws JSONException {
-		return new JSONArray(super.getJSONArray(index));
+		final Object rtn = this.get(index);
+		if(rtn instanceof JSONArray) {
+			return (JSONArray)rtn;
+		}
+		throw new JSONException("JSONArray[" + index + "] is not a JSONArray.");
 	}
 
+	// See JSONObject.get()
 	@Override public Object get(int idx) throws JSONException {
-		final Object rtn = super.get(idx);
-		return (rtn instanceof org.json.JSONObject) ? new JSONObject((org.json.JSONObject)rtn)
-		     : (rtn instanceof org.json.JSONArray) ? new JSONArray((org.json.JSONArray)rtn)
-		     : rtn;
+		return JSONObject.convert(super.get(idx));
+	}
+
+	// Like JSONObject.put(String, Object), every other way of storing an element ends up in one of these
+	@Override public JSONArray put(Object value) {
+		super.put(JSONObject.convert(value));
+		return this;
+	}
+
+	@Override public JSONArray put(int idx, Object value) throws JSONException {
+		super.put(idx, JSONObject.convert(value));
+		return this;
 	}
 
 	public boolean contains(Object seek) {
@@ -126,6 +152,11 @@ public class JSONArray extends org.json.JSONArray {
 		return StreamSupport.stream(new JSONArraySpliterator<>(this), true);
 	}
 
+	// A parallel stream if 'parallel' is set and the array is big enough to benefit, otherwise sequential
+	<T> Stream<T> stream(boolean parallel) {
+		return StreamSupport.stream(new JSONArraySpliterator<>(this), parallel && this.length() >= PARALLEL_THRESHOLD);
+	}
+
 	// This assumes that this array contains JSONObjects, and returns a stream of Object[]s.
 	// Each Object[] corresponds to one entry in this JSONArray, and the elements of the Object[] correspond to the values of the keys provided by 'keys'
 	public Stream<Object[]> valueStream(final String... keys) {
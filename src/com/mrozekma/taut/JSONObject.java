@@ -5,20 +5,107 @@ import org.json.JSONException;
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+// Parsed documents are made of JSONObjects and JSONArrays all the way down (see JSONTokener), so nested values are returned as-is.
+// Nested org.json objects can still be stored in one (e.g. put() with a Map or Collection); those are converted when they're stored,
+// so reads never have to modify the object. That matters because parsed responses can be shared between threads (see TautConnection.post())
 public class JSONObject extends org.json.JSONObject {
 	public JSONObject() {}
 
 	public JSONObject(String source) throws JSONException {
-		super(source);
+		super(new JSONTokener(source));
 	}
 
+	public JSONObject(JSONTokener tokener) throws JSONException {
+		super(tokener);
+	}
+
+	// Nested values are shared with 'wrap' unless they're org.json nodes, which are converted
 	public JSONObject(org.json.JSONObject wrap) throws JSONException {
 		super(wrap, getKeys(wrap.keys()));
 	}
 
+	// Parses an object from 'x' like JSONObject(JSONTokener), except the array under 'arrayKey' isn't stored in the result.
+	// Instead each element is parsed and passed to 'fn' as soon as it's read, so it can be discarded before the next is parsed
+	static <T> JSONObject parseStreaming(JSONTokener x, String arrayKey, Consumer<T> fn) throws JSONException {
+		final JSONObject rtn = new JSONObject();
+		if(x.nextClean() != '{') {
+			throw x.syntaxError("A JSONObject text must begin with '{'");
+		}
+		while(true) {
+			switch(x.nextClean()) {
+			case 0:
+				throw x.syntaxError("A JSONObject text must end with '}'");
+			case '}':
+				return rtn;
+			default:
+				x.back();
+			}
+			final String key = x.nextValue().toString();
+			if(x.nextClean() != ':') {
+				throw x.syntaxError("Expected a ':' after a key");
+			}
+			if(key.equals(arrayKey)) {
+				streamArray(x, fn);
+			} else {
+				rtn.putOnce(key, x.nextValue());
+			}
+			switch(x.nextClean()) {
+			case ',':
+				if(x.nextClean() == '}') {
+					return rtn;
+				}
+				x.back();
+				break;
+			case '}':
+				return rtn;
+			default:
+				throw x.syntaxError("Expected a ',' or '}'");
+			}
+		}
+	}
+
+	private static <T> void streamArray(JSONTokener x, Consumer<T> fn) throws JSONException {
+		if(x.nextClean() != '[') {
+			// Not actually an array (probably null); there's nothing to stream
+			x.back();
+			x.nextValue();
+			return;
+		}
+		if(x.nextClean() == ']') {
+			return;
+		}
+		x.back();
+		// The caller picks T to match the array's elements; if it's wrong 'fn' throws ClassCastException on the first one
+		@SuppressWarnings("unchecked") final Consumer<Object> elementFn = (Consumer<Object>)fn;
+		while(true) {
+			final char c = x.nextClean();
+			x.back();
+			if(c == '{') {
+				elementFn.accept(new JSONObject(x));
+			} else if(c == '[') {
+				elementFn.accept(new JSONArray(x));
+			} else {
+				elementFn.accept(x.nextValue());
+			}
+			switch(x.nextClean()) {
+			case ',':
+				if(x.nextClean() == ']') {
+					return;
+				}
+				x.back();
+				break;
+			case ']':
+				return;
+			default:
+				throw x.syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
 	private static String[] getKeys(Iterator iter) {
 		final List<String> rtn = new LinkedList<>();
 		iter.forEachRemaining(o -> rtn.add(o.toString()));
@@ -96,19 +183,41 @@ public class JSONObject extends org.json.JSONObject {
 		return rtn;
 	}
 
+	// put() already converted anything stored, so this is only a fallback. The result isn't written back; see the class comment
 	@Override public Object get(String key) throws JSONException {
-		final Object rtn = super.get(key);
-		return (rtn instanceof org.json.JSONObject) ? new JSONObject((org.json.JSONObject)rtn)
-		     : (rtn instanceof org.json.JSONArray) ? new JSONArray((org.json.JSONArray)rtn)
-		     : rtn;
+		return convert(super.get(key));
+	}
+
+	// Converts an org.json node into ours. Anything else is returned unchanged
+	static Object convert(Object obj) throws JSONException {
+		return (obj instanceof JSONObject || obj instanceof JSONArray) ? obj
+		     : (obj instanceof org.json.JSONObject) ? new JSONObject((org.json.JSONObject)obj)
+		     : (obj instanceof org.json.JSONArray) ? new JSONArray((org.json.JSONArray)obj)
+		     : obj;
 	}
 
 	public JSONArray getJSONArray(String key) throws JSONException {
-		return new JSONArray(super.getJSONArray(key));
+		final Object rtn = this.get(key);
+		if(rtn instanceof JSONArray) {
+			return (JSONArray)rtn;
+		}
+		throw new JSONException("JSONObject[" + quote(key) + "] is not a JSONArray.");
 	}
 
 	public JSONObject getJSONObject(String key) throws JSONException {
-		return new JSONObject(super.getJSONObject(key));
+		final Object rtn = this.get(key);
+		if(rtn instanceof JSONObject) {
+			return (JSONObject)rtn;
+		}
+		throw new JSONException("JSONObject[" + quote(key) + "] is not a JSONObject.");
+	}
+
+	public JSONArray optJSONArray(String key) {
+		return (this.opt(key) instanceof org.json.JSONArray) ? this.getJSONArray(key) : null;
+	}
+
+	public JSONObject optJSONObject(String key) {
+		return (this.opt(key) instanceof org.json.JSONObject) ? this.getJSONObject(key) : null;
 	}
 
 	// Every superclass method that returns this:
@@ -153,8 +262,9 @@ public class JSONObject extends org.json.JSONObject {
 		return this;
 	}
 
+	// The other put()s, putOnce(), putOpt(), accumulate() and the org.json constructors all store through this
 	public JSONObject put(String key, Object value) throws JSONException {
-		super.put(key, value);
+		super.put(key, convert(value));
 		return this;
 	}
 
@@ -0,0 +1,35 @@
+package com.mrozekma.taut;
+
+import org.json.JSONException;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+// Builds nested objects and arrays as our JSONObject/JSONArray instead of org.json's, so a parsed document is already made of our types
+// and navigating it (get(), getJSONObject(), ...) can hand back the nested nodes as-is instead of wrapping a copy of each on every access
+public class JSONTokener extends org.json.JSONTokener {
+	public JSONTokener(Reader reader) {
+		super(reader);
+	}
+
+	public JSONTokener(InputStream inputStream) throws JSONException {
+		super(inputStream);
+	}
+
+	public JSONTokener(String s) {
+		super(s);
+	}
+
+	@Override public Object nextValue() throws JSONException {
+		final char c = this.nextClean();
+		this.back();
+		switch(c) {
+		case '{':
+			return new JSONObject(this);
+		case '[':
+			return new JSONArray(this);
+		default:
+			return super.nextValue();
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package com.mrozekma.taut;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 abstract class LazyLoadedObject {
-	private boolean isLoaded;
+	private volatile boolean isLoaded;
 	final TautConnection conn;
 	private final String id;
 
@@ -20,9 +23,29 @@ abstract class LazyLoadedObject {
 
 	protected final void checkLoad() throws TautException {
 		if(!this.isLoaded) {
-			this.populate(this.load());
-			this.isLoaded = true;
+			synchronized(this) {
+				if(!this.isLoaded) {
+					this.populate(this.load());
+					this.isLoaded = true;
+				}
+			}
+		}
+	}
+
+	protected final CompletableFuture<Void> checkLoadAsync() {
+		if(this.isLoaded) {
+			return CompletableFuture.completedFuture(null);
 		}
+		return this.conn.async(() -> {
+			this.checkLoad();
+			return null;
+		});
+	}
+
+	// Replaces this object's data with 'json', e.g. when a fresher copy was returned by a list call
+	final synchronized void update(JSONObject json) {
+		this.populate(json);
+		this.isLoaded = true;
 	}
 
 	public String getId() { return this.id; }
@@ -43,6 +66,19 @@ abstract class LazyLoadedObject {
 		return this.conn.post(route, args);
 	}
 
+	protected <T> JSONObject postStreaming(String route, JSONObject args, String arrayKey, Consumer<T> fn) throws TautException {
+		this.prepJSONObjectForPost(args);
+		return this.conn.postStreaming(route, args, arrayKey, fn);
+	}
+
+	protected CompletableFuture<JSONObject> postAsync(String route) {
+		return this.postAsync(route, new JSONObject());
+	}
+
+	protected CompletableFuture<JSONObject> postAsync(String route, JSONObject args) {
+		return this.conn.async(() -> this.post(route, args));
+	}
+
 	protected abstract void prepJSONObjectForPost(JSONObject args);
 
 	@Override public String toString() {
@@ -0,0 +1,84 @@
+package com.mrozekma.taut;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Identity map from ID to the canonical instance of a LazyLoadedObject, so each object is only loaded once per connection.
+// Entries are soft references, so on a large workspace the JVM can drop objects nobody is holding when memory gets tight
+class LazyLoadedObjectCache<T extends LazyLoadedObject> {
+	private static class Entry<T> extends SoftReference<T> {
+		final String id;
+
+		Entry(String id, T obj, ReferenceQueue<? super T> queue) {
+			super(obj, queue);
+			this.id = id;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry<T>> objects = new ConcurrentHashMap<>();
+	private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+
+	// Returns the cached object with the given ID, or makes one with 'factory' if there isn't one
+	T get(String id, Function<String, T> factory) {
+		this.purge();
+		while(true) {
+			final Entry<T> entry = this.objects.get(id);
+			final T existing = (entry == null) ? null : entry.get();
+			if(existing != null) {
+				return existing;
+			}
+
+			final T obj = factory.apply(id);
+			final Entry<T> newEntry = new Entry<>(id, obj, this.queue);
+			if((entry == null) ? (this.objects.putIfAbsent(id, newEntry) == null) : this.objects.replace(id, entry, newEntry)) {
+				return obj;
+			}
+			// Lost a race with another thread adding the same ID; use theirs
+		}
+	}
+
+	// Like get(), but if the object is already cached it's repopulated from 'json' instead of being replaced
+	T update(JSONObject json, Function<JSONObject, T> factory) {
+		final Object[] created = new Object[1];
+		final T obj = this.get(json.getString("id"), id -> {
+			final T rtn = factory.apply(json);
+			created[0] = rtn;
+			return rtn;
+		});
+		if(obj != created[0]) {
+			obj.update(json);
+		}
+		return obj;
+	}
+
+	Optional<T> getIfPresent(String id) {
+		final Entry<T> entry = this.objects.get(id);
+		return (entry == null) ? Optional.empty() : Optional.ofNullable(entry.get());
+	}
+
+	void remove(String id) {
+		this.objects.remove(id);
+	}
+
+	void clear() {
+		this.objects.clear();
+	}
+
+	int size() {
+		this.purge();
+		return this.objects.size();
+	}
+
+	private void purge() {
+		Reference<? extends T> ref;
+		while((ref = this.queue.poll()) != null) {
+			// Only entries are registered with the queue. Entry<?> is enough to find and remove it, so there's no unchecked cast
+			final Entry<?> entry = (Entry<?>)ref;
+			this.objects.remove(entry.id, entry);
+		}
+	}
+}
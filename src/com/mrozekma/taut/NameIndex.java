@@ -0,0 +1,71 @@
+package com.mrozekma.taut;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Case-insensitive name -> ID index, so resolving a name doesn't need to download and scan the whole user/channel list.
+// Objects add themselves whenever they're populated, and RTM events keep it current.
+// Names that weren't found are remembered for a while so repeated lookups of a bad name don't each refetch the list
+class NameIndex {
+	static final long NEGATIVE_TTL = TimeUnit.MINUTES.toNanos(1);
+	private static final int MIN_SWEEP = 64;
+
+	private final ConcurrentHashMap<String, String> ids = new ConcurrentHashMap<>(); // name -> ID
+	private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>(); // ID -> name
+	private final ConcurrentHashMap<String, Long> misses = new ConcurrentHashMap<>(); // name -> expiration
+	private int sweepAt = MIN_SWEEP; // Size of 'misses' that triggers the next sweep
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ROOT);
+	}
+
+	Optional<String> get(String name) {
+		return Optional.ofNullable(this.ids.get(normalize(name)));
+	}
+
+	synchronized void put(String name, String id) {
+		final String key = normalize(name);
+		final String oldName = this.names.put(id, key);
+		if(oldName != null && !oldName.equals(key)) {
+			this.ids.remove(oldName, id);
+		}
+		this.ids.put(key, id);
+		this.misses.remove(key);
+	}
+
+	synchronized void remove(String id) {
+		final String name = this.names.remove(id);
+		if(name != null) {
+			this.ids.remove(name, id);
+		}
+	}
+
+	boolean isKnownMissing(String name) {
+		final Long expiration = this.misses.get(normalize(name));
+		if(expiration == null) {
+			return false;
+		}
+		if(System.nanoTime() - expiration > 0) {
+			this.misses.remove(normalize(name), expiration);
+			return false;
+		}
+		return true;
+	}
+
+	// Expired misses are only dropped on lookup, so names that are never looked up again are swept out here.
+	// The threshold doubles with the number left after a sweep, so sweeping costs O(1) per miss on average
+	synchronized void addMiss(String name) {
+		final long now = System.nanoTime();
+		this.misses.put(normalize(name), now + NEGATIVE_TTL);
+		if(this.misses.size() >= this.sweepAt) {
+			this.misses.values().removeIf(expiration -> now - expiration > 0);
+			this.sweepAt = Math.max(MIN_SWEEP, this.misses.size() * 2);
+		}
+	}
+
+	int size() {
+		return this.ids.size();
+	}
+}
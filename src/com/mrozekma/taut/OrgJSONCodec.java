@@ -0,0 +1,31 @@
+package com.mrozekma.taut;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+// The original behavior: org.json's tokener (via our JSONTokener) and serializer
+class OrgJSONCodec implements TautJSONCodec {
+	@Override public JSONObject parse(Reader reader) throws JSONException {
+		return new JSONObject(new JSONTokener(reader));
+	}
+
+	@Override public JSONObject parse(String text) throws JSONException {
+		return new JSONObject(text);
+	}
+
+	@Override public <T> JSONObject parseStreaming(Reader reader, String arrayKey, Consumer<T> fn) throws JSONException {
+		return JSONObject.parseStreaming(new JSONTokener(reader), arrayKey, fn);
+	}
+
+	@Override public void write(JSONObject json, Writer writer) throws IOException {
+		json.write(writer);
+	}
+
+	@Override public String toString(JSONObject json) {
+		return json.toString();
+	}
+}
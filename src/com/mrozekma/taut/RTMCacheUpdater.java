@@ -0,0 +1,158 @@
+package com.mrozekma.taut;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.mrozekma.taut.TautEventListener.EventType.*;
+
+// Keeps the connection's cached users, channels and files (and the name indexes) in sync with RTM events, so cached objects don't go stale.
+// Events that carry the whole object update the cached instance in place; events that only carry part of it
+// unload the cached instance so its next access reloads it. Objects that aren't cached are left alone
+class RTMCacheUpdater implements TautEventListener {
+	private static final Set<EventType> eventTypes = EnumSet.of(
+		user_change, team_join, bot_added, bot_changed, channel_joined, group_joined, channel_rename, group_rename,
+		channel_created, channel_archive, channel_unarchive, channel_left, group_archive, group_unarchive, group_close,
+		group_left, channel_deleted, im_created, im_close, message, file_change, file_created, file_public, file_shared, file_unshared,
+		file_comment_added, file_comment_deleted, file_comment_edited, file_deleted, pin_added, pin_removed
+	);
+
+	@Override public Set<EventType> getEventTypes() {
+		return eventTypes;
+	}
+
+	@Override public boolean receivesUnknownEvents() {
+		return false;
+	}
+
+	@Override public void fire(TautConnection conn, JSONObject json, Optional<TautEvent> event) throws TautException {
+		final String type = json.optString("type", "");
+		switch(type) {
+		// Full user object
+		case "user_change":
+		case "team_join": {
+			final JSONObject user = json.getJSONObject("user");
+			if(type.equals("team_join")) {
+				TautUser.fromJSON(conn, user);
+			} else {
+				conn.userCache.getIfPresent(user.getString("id")).ifPresent(u -> u.update(user));
+			}
+			break; }
+
+		case "bot_added":
+		case "bot_changed":
+			// The bot object here isn't the same shape as bots.info
+			unload(conn.userCache.getIfPresent(json.getJSONObject("bot").getString("id")));
+			break;
+
+		// Full channel object
+		case "channel_joined":
+		case "group_joined":
+			TautChannel.fromJSON(conn, json.getJSONObject("channel"));
+			break;
+
+		// Partial channel object
+		case "channel_rename":
+		case "group_rename": {
+			final JSONObject channel = json.getJSONObject("channel");
+			conn.channelNames.put(channel.getString("name"), channel.getString("id"));
+			unload(conn.channelCache.getIfPresent(channel.getString("id")));
+			break; }
+
+		case "channel_created": {
+			final JSONObject channel = json.getJSONObject("channel");
+			conn.channelNames.put(channel.getString("name"), channel.getString("id"));
+			break; }
+
+		// Channel ID only
+		case "channel_archive":
+		case "channel_unarchive":
+		case "channel_left":
+		case "group_archive":
+		case "group_unarchive":
+		case "group_close":
+		case "group_left":
+			unload(conn.channelCache.getIfPresent(json.getString("channel")));
+			break;
+
+		case "channel_deleted":
+			conn.channelCache.remove(json.getString("channel"));
+			conn.channelNames.remove(json.getString("channel"));
+			break;
+
+		// IMs can't be reloaded by ID, so instead of unloading one it's dropped from both maps and the next lookup opens it again with im.open
+		case "im_created": {
+			final JSONObject channel = json.getJSONObject("channel");
+			if(channel.has("user") && channel.has("created") && channel.has("last_read")) {
+				TautDirectChannel.fromJSON(conn, channel);
+			} else {
+				forgetIM(conn, channel.getString("id"), json.optString("user", channel.optString("user", null)));
+			}
+			break; }
+
+		case "im_close":
+			forgetIM(conn, json.getString("channel"), json.optString("user", null));
+			break;
+
+		case "message":
+			// Topic, purpose and membership changes show up as message subtypes rather than their own events
+			if(json.has("subtype") && json.has("channel")) {
+				switch(json.getString("subtype")) {
+				case "channel_topic":
+				case "channel_purpose":
+				case "channel_name":
+				case "channel_join":
+				case "channel_leave":
+				case "group_topic":
+				case "group_purpose":
+				case "group_name":
+				case "group_join":
+				case "group_leave":
+					unload(conn.channelCache.getIfPresent(json.getString("channel")));
+					break;
+				}
+			}
+			break;
+
+		case "file_change":
+		case "file_created":
+		case "file_public":
+		case "file_shared":
+		case "file_unshared":
+		case "file_comment_added":
+		case "file_comment_deleted":
+		case "file_comment_edited":
+			unload(conn.fileCache.getIfPresent(getFileId(json)));
+			break;
+
+		case "file_deleted":
+			conn.fileCache.remove(getFileId(json));
+			break;
+
+		case "pin_added":
+		case "pin_removed": {
+			final JSONObject item = json.getJSONObject("item");
+			if(item.has("file")) {
+				unload(conn.fileCache.getIfPresent(item.getJSONObject("file").getString("id")));
+			}
+			break; }
+		}
+	}
+
+	private static String getFileId(JSONObject json) {
+		return json.has("file_id") ? json.getString("file_id") : json.getJSONObject("file").getString("id");
+	}
+
+	private static void forgetIM(TautConnection conn, String channelId, String userId) {
+		final TautDirectChannel im = conn.directChannelsById.remove(channelId);
+		if(userId != null) {
+			conn.directChannels.remove(userId);
+		} else if(im != null) {
+			conn.directChannels.values().remove(im);
+		}
+	}
+
+	private static void unload(Optional<? extends LazyLoadedObject> obj) {
+		obj.ifPresent(LazyLoadedObject::unload);
+	}
+}
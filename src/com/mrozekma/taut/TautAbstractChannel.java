@@ -3,6 +3,7 @@ package com.mrozekma.taut;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class TautAbstractChannel extends LazyLoadedObject {
 	protected TautAbstractChannel(TautConnection conn, String id) {
@@ -17,19 +18,19 @@ public abstract class TautAbstractChannel extends LazyLoadedObject {
 
 	protected abstract String getRoutePrefix();
 
-	public Iterable<TautMessage> history() throws TautException {
+	public HistoryIterable history() throws TautException {
 		return this.history(100);
 	}
 
-	public Iterable<TautMessage> history(int count) throws TautException {
+	public HistoryIterable history(int count) throws TautException {
 		return this.history(Optional.empty(), Optional.empty(), true, count, true);
 	}
 
-	public Iterable<TautMessage> history(int count, Date latest, Date oldest, boolean inclusive) throws TautException {
+	public HistoryIterable history(int count, Date latest, Date oldest, boolean inclusive) throws TautException {
 		return this.history(Optional.of(latest), Optional.of(oldest), inclusive, count, true);
 	}
 
-	public Iterable<TautMessage> history(Optional<Date> latest, Optional<Date> oldest, boolean inclusive, int count, boolean unreads) throws TautException {
+	public HistoryIterable history(Optional<Date> latest, Optional<Date> oldest, boolean inclusive, int count, boolean unreads) throws TautException {
 		return new HistoryIterable(this, latest, oldest, inclusive, count, unreads);
 	}
 
@@ -47,6 +48,10 @@ public abstract class TautAbstractChannel extends LazyLoadedObject {
 		);
 	}
 
+	public CompletableFuture<TautMessage> messageByTsAsync(String ts) {
+		return this.conn.async(() -> this.messageByTs(ts));
+	}
+
 	public TautMessage sendMessage(TautMessageDraft message) throws TautException {
 		final JSONObject args = new JSONObject()
 				.put("text", message.getText())
@@ -61,16 +66,62 @@ public abstract class TautAbstractChannel extends LazyLoadedObject {
 				.put("attachments", Arrays.stream(message.getAttachments()).map(TautAttachment::toJSON).toArray(JSONObject[]::new))
 				;
 		final JSONObject res = this.post("chat.postMessage", args);
-		return this.messageByTs(res.getString("ts"));
+		return this.messageFromResponse(res, message.getText(), Optional.empty());
 	}
 
 	public TautMessage sendMessage(String text) throws TautException {
 		return this.sendMessage(new TautMessageDraft(text));
 	}
 
+	public CompletableFuture<TautMessage> sendMessageAsync(TautMessageDraft message) {
+		return this.conn.async(() -> this.sendMessage(message));
+	}
+
+	public CompletableFuture<TautMessage> sendMessageAsync(String text) {
+		return this.sendMessageAsync(new TautMessageDraft(text));
+	}
+
+	// Sends plain text over 'rtm' instead of making an HTTP request. Drafts RTM can't carry (attachments, a custom sender, not posting as the user,
+	// non-default unfurling, names to link) go through chat.postMessage as usual, as does everything while 'rtm' is reconnecting
+	public CompletableFuture<TautMessage> sendMessageAsync(TautRTMConnection rtm, TautMessageDraft message) {
+		if(rtm.getConnection() != this.conn) {
+			throw new IllegalArgumentException("RTM connection belongs to a different TautConnection");
+		}
+		if(!message.canSendOverRTM() || rtm.getState() != TautRTMConnection.State.connected) {
+			return this.sendMessageAsync(message);
+		}
+		final String text = message.getText();
+		return rtm.postMessage(this, text).thenApply(reply -> this.messageFromResponse(reply, reply.optString("text", text), Optional.empty()));
+	}
+
+	// RTM can only post as the authed user, so that's what this asks for
+	public CompletableFuture<TautMessage> sendMessageAsync(TautRTMConnection rtm, String text) {
+		return this.sendMessageAsync(rtm, new TautMessageDraft(text).setAsUser(true));
+	}
+
 	public TautMessage sendMeMessage(String text) throws TautException {
 		final JSONObject res = this.post("chat.meMessage", new JSONObject().put("text", text));
-		return this.messageByTs(res.getString("ts"));
+		return this.messageFromResponse(res, text, Optional.of("me_message"));
+	}
+
+	public CompletableFuture<TautMessage> sendMeMessageAsync(String text) {
+		return this.conn.async(() -> this.sendMeMessage(text));
+	}
+
+	// Builds the message just posted from the API response instead of looking it up in the history, which would cost another request.
+	// chat.postMessage includes the message; chat.meMessage only gives the timestamp, so the rest is filled in from what was sent.
+	// Use TautMessage.refetch() if the server's full view of the message is needed
+	private TautMessage messageFromResponse(JSONObject res, String text, Optional<String> subtype) {
+		final JSONObject message = Optional.ofNullable(res.optJSONObject("message")).orElseGet(() -> new JSONObject()
+				.put("type", "message")
+				.put("user", this.conn.getSelf().getId())
+				.put("text", text)
+				.putOpt("subtype", subtype)
+		);
+		if(!message.has("ts")) {
+			message.put("ts", res.getString("ts"));
+		}
+		return new TautMessage(this, message);
 	}
 
 	public TautMessage sendAttachment(TautAttachment attachment) throws TautException {
@@ -81,4 +132,9 @@ public abstract class TautAbstractChannel extends LazyLoadedObject {
 		file.setChannels(this);
 		return this.conn.uploadFile(file);
 	}
+
+	public CompletableFuture<TautFile> uploadFileAsync(TautFileUpload file) {
+		file.setChannels(this);
+		return this.conn.uploadFileAsync(file);
+	}
 }
@@ -1,8 +1,11 @@
 package com.mrozekma.taut;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 // https://api.slack.com/types/channel
@@ -37,6 +40,10 @@ public class TautChannel extends TautAbstractChannel {
 	public UserCreatedString getPurpose() throws TautException { this.checkLoad(); return this.purpose; }
 	public boolean isMember() throws TautException { this.checkLoad(); return this.isMember; }
 
+	public CompletableFuture<TautChannel> loadAsync() {
+		return this.checkLoadAsync().thenApply(v -> this);
+	}
+
 	public Date getCreatedDate() throws TautException {
 		return TautConnection.tsApiToHost(this.getCreated());
 	}
@@ -58,6 +65,7 @@ public class TautChannel extends TautAbstractChannel {
 
 	@Override protected void populate(JSONObject json) {
 		this.name = json.getString("name");
+		this.conn.channelNames.put(this.name, this.getId());
 		this.created = json.getLong("created");
 		this.creator = this.conn.getUserById(json.getString("creator"));
 		this.isArchived = json.getBoolean("is_archived");
@@ -141,32 +149,72 @@ public class TautChannel extends TautAbstractChannel {
 	}
 
 	public static TautChannel getById(TautConnection conn, String id) {
-		return new TautChannel(conn, id);
+		return conn.channelCache.get(id, i -> new TautChannel(conn, i));
+	}
+
+	static TautChannel fromJSON(TautConnection conn, JSONObject json) {
+		return conn.channelCache.update(json, j -> new TautChannel(conn, j));
 	}
 
 	public static TautChannel getByName(TautConnection conn, String name) throws TautException {
 		if(name.startsWith("#")) {
 			name = name.substring(1);
 		}
-		for(TautChannel channel : getAll(conn)) {
+		Optional<String> id = conn.channelNames.get(name);
+		if(id.isPresent()) {
+			final TautChannel channel = getById(conn, id.get());
 			if(channel.getName().equalsIgnoreCase(name)) {
 				return channel;
 			}
+			// Renamed without us hearing about it
+			conn.channelNames.remove(id.get());
 		}
-		for(TautChannel channel : getAllPrivate(conn)) {
-			if(channel.getName().equalsIgnoreCase(name)) {
-				return channel;
+		if(!conn.channelNames.isKnownMissing(name)) {
+			// Every channel populated from the lists is indexed
+			forEach(conn, channel -> {});
+			id = conn.channelNames.get(name);
+			if(!id.isPresent()) {
+				forEachPrivate(conn, channel -> {});
+				id = conn.channelNames.get(name);
+			}
+			if(id.isPresent()) {
+				return getById(conn, id.get());
 			}
+			conn.channelNames.addMiss(name);
 		}
 		throw new TautException(String.format("Channel `%s' not found", name));
 	}
 
 	public static List<TautChannel> getAll(TautConnection conn) throws TautException {
-		return conn.post("channels.list").<JSONObject>streamArray("channels").map(json -> new TautChannel(conn, json)).collect(Collectors.toList());
+		return getAll(conn, false);
+	}
+
+	// See TautUser.getAll(TautConnection, boolean)
+	public static List<TautChannel> getAll(TautConnection conn, boolean parallel) throws TautException {
+		if(parallel) {
+			return conn.post("channels.list").getJSONArray("channels").<JSONObject>stream(true).map(json -> fromJSON(conn, json)).collect(Collectors.toList());
+		}
+		final List<TautChannel> rtn = new ArrayList<>();
+		forEach(conn, rtn::add);
+		return rtn;
 	}
 
 	public static List<TautChannel> getAllPrivate(TautConnection conn) throws TautException {
-		return conn.post("groups.list").<JSONObject>streamArray("groups").map(json -> new TautChannel(conn, json)).collect(Collectors.toList());
+		final List<TautChannel> rtn = new ArrayList<>();
+		forEachPrivate(conn, rtn::add);
+		return rtn;
+	}
+
+	// Channels are passed to 'fn' as they're parsed from the response, so the full channel list never has to be held in memory.
+	// Like TautUser.forEach(), 'fn' shouldn't call the API: the response is still holding its pooled HTTP connection, and with the pool
+	// exhausted the call waits on a connection that's only released once 'fn' returns. Use getAll() for that
+	public static void forEach(TautConnection conn, Consumer<TautChannel> fn) throws TautException {
+		conn.postStreaming("channels.list", new JSONObject(), "channels", (JSONObject json) -> fn.accept(fromJSON(conn, json)));
+	}
+
+	// Same caveat as forEach()
+	public static void forEachPrivate(TautConnection conn, Consumer<TautChannel> fn) throws TautException {
+		conn.postStreaming("groups.list", new JSONObject(), "groups", (JSONObject json) -> fn.accept(fromJSON(conn, json)));
 	}
 
 	public static TautChannel create(TautConnection conn, String name) throws TautException {
@@ -174,6 +222,6 @@ public class TautChannel extends TautAbstractChannel {
 			name = name.substring(1);
 		}
 		final JSONObject res = conn.post("channels.create", new JSONObject().put("name", name));
-		return new TautChannel(conn, res.getJSONObject("channel"));
+		return fromJSON(conn, res.getJSONObject("channel"));
 	}
 }
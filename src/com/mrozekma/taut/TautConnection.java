@@ -1,35 +1,104 @@
 package com.mrozekma.taut;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.glassfish.tyrus.client.ClientManager;
+import org.json.JSONException;
 
 import java.awt.*;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
-
-public class TautConnection {
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TautConnection implements AutoCloseable {
 	static final boolean VERBOSE = System.getenv().containsKey("TAUT_VERBOSE");
-	private static final String API_URL = "https://slack.com/api/%s";
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	// Read-only routes where concurrent identical calls can share a single request
+	private static final Set<String> COALESCED_ROUTES = new HashSet<>(Arrays.asList(
+		"bots.info", "channels.info", "channels.list", "emoji.list", "files.info", "files.list", "groups.info",
+		"groups.list", "im.list", "reactions.get", "users.info", "users.list"
+	));
 
 	private final String token;
+	private final TautHTTPTransport transport;
+	private final boolean ownsTransport;
+	private final TautRateLimiter rateLimiter = new TautRateLimiter();
 	private final TautUser me;
+	private final String teamId;
+	private Optional<WorkspaceSnapshot> snapshot = Optional.empty();
+	private Optional<Executor> asyncExecutor = Optional.empty();
+	private final java.util.Map<String, CompletableFuture<JSONObject>> inFlight = new ConcurrentHashMap<>();
+	final LazyLoadedObjectCache<TautUser> userCache = new LazyLoadedObjectCache<>();
+	final LazyLoadedObjectCache<TautChannel> channelCache = new LazyLoadedObjectCache<>();
+	final LazyLoadedObjectCache<TautFile> fileCache = new LazyLoadedObjectCache<>();
+	final NameIndex userNames = new NameIndex();
+	final NameIndex channelNames = new NameIndex();
+	final java.util.Map<String, TautDirectChannel> directChannels = new ConcurrentHashMap<>(); // user ID -> IM channel
+	final java.util.Map<String, TautDirectChannel> directChannelsById = new ConcurrentHashMap<>(); // IM channel ID -> IM channel
 	TautConnection historyConnection;
 
+	@FunctionalInterface
+	interface AsyncCall<T> {
+		T call() throws TautException;
+	}
+
+	@FunctionalInterface
+	interface ResponseParser {
+		JSONObject parse(Reader reader) throws JSONException;
+	}
+
 	public TautConnection(String token) throws TautException {
+		this(token, new TautHTTPTransport(), true);
+	}
+
+	// 'transport' can be shared between connections; it's left open when this connection is closed
+	public TautConnection(String token, TautHTTPTransport transport) throws TautException {
+		this(token, transport, false);
+	}
+
+	private TautConnection(String token, TautHTTPTransport transport, boolean ownsTransport) throws TautException {
 		this.token = token;
+		this.transport = transport;
+		this.ownsTransport = ownsTransport;
 
-		final JSONObject res = this.post("auth.test");
-		this.me = new TautUser(this, res.getString("user_id"));
+		try {
+			final JSONObject res = this.post("auth.test");
+			this.me = this.getUserById(res.getString("user_id"));
+			this.teamId = res.getString("team_id");
+		} catch(TautException | RuntimeException e) {
+			// Nobody else can close a transport we made
+			if(ownsTransport) {
+				try {
+					transport.close();
+				} catch(IOException closeError) {
+					e.addSuppressed(closeError);
+				}
+			}
+			throw e;
+		}
 
 		this.historyConnection = this;
 	}
@@ -38,47 +107,125 @@ public class TautConnection {
 		this.historyConnection = historyConnection;
 	}
 
-	JSONObject post(String route) throws TautException {
-		return this.post(route, new JSONObject());
+	public TautHTTPTransport getTransport() {
+		return this.transport;
 	}
 
-	JSONObject post(String route, JSONObject args) throws TautException {
-		return staticPost(route, args.put("token", this.token));
+	public TautRateLimiter getRateLimiter() {
+		return this.rateLimiter;
 	}
 
-	private static JSONObject staticPost(String route, JSONObject args) throws TautException {
-		final HttpClient client = HttpClients.createDefault();
-		final HttpPost post = new HttpPost(String.format(API_URL, route));
+	// By default asynchronous calls (including RTM reconnects) run on the transport's thread pool
+	public void setAsyncExecutor(Executor executor) {
+		this.asyncExecutor = Optional.of(executor);
+	}
 
-		// Use a MultipartEntity iff there are byte[](s) in 'args'
-		// It's possible to use it in all cases, but the inefficiency bothers me
-		{
-			final HttpEntity entity;
-			if(args.stream().map(args::get).anyMatch(e -> e instanceof byte[])) {
-				MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-				args.stream().forEach(key -> {
-					final Object val = args.get(key);
-					if(val instanceof byte[]) {
-						builder.addBinaryBody(key, (byte[])val, ContentType.APPLICATION_OCTET_STREAM, "file");
-					} else {
-						builder.addTextBody(key, val.toString());
-					}
-				});
-				entity = builder.build();
-			} else {
-				final List<NameValuePair> nvps = new LinkedList<>();
-				args.stream().forEach(key -> {
-					final Object val = args.get(key);
-					nvps.add(new BasicNameValuePair(key, val.toString()));
-				});
+	Executor getAsyncExecutor() throws TautException {
+		return this.asyncExecutor.isPresent() ? this.asyncExecutor.get() : this.transport.getExecutor();
+	}
 
+	// Runs 'fn' asynchronously. A TautException thrown by 'fn' completes the future exceptionally with that exception, as does the executor rejecting it.
+	// This is the blocking HTTP client on a thread pool; there's no non-blocking client on our classpath
+	<T> CompletableFuture<T> async(AsyncCall<T> fn) {
+		final CompletableFuture<T> rtn = new CompletableFuture<>();
+		final Executor executor;
+		try {
+			executor = this.getAsyncExecutor();
+		} catch(TautException e) {
+			rtn.completeExceptionally(e);
+			return rtn;
+		}
+		try {
+			executor.execute(() -> {
 				try {
-					entity = new UrlEncodedFormEntity(nvps, "UTF-8");
-				} catch(UnsupportedEncodingException e) {
-					throw new TautException(e);
+					rtn.complete(fn.call());
+				} catch(TautException | RuntimeException e) {
+					rtn.completeExceptionally(e);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			// Shut down, or a bounded executor from setAsyncExecutor() that's full
+			rtn.completeExceptionally(new TautException("Async executor rejected the call", e));
+		}
+		return rtn;
+	}
+
+	@Override public void close() throws TautException {
+		if(this.ownsTransport) {
+			try {
+				this.transport.close();
+			} catch(IOException e) {
+				throw new TautException(e);
+			}
+		}
+	}
+
+	JSONObject post(String route) throws TautException {
+		return this.post(route, new JSONObject());
+	}
+
+	JSONObject post(String route, JSONObject args) throws TautException {
+		args.put("token", this.token);
+		if(!COALESCED_ROUTES.contains(route)) {
+			return staticPost(this.transport, Optional.of(this.rateLimiter), route, args, TautJSONCodec.getDefault()::parse);
+		}
+
+		// If the same read is already in flight, wait for its result instead of sending another request.
+		// The response is shared between all the callers, so it mustn't be modified
+		final String key = route + "?" + args.stream().filter(k -> !k.equals("token")).sorted().map(k -> k + "=" + args.get(k)).collect(Collectors.joining("&"));
+		final CompletableFuture<JSONObject> request = new CompletableFuture<>();
+		final CompletableFuture<JSONObject> existing = this.inFlight.putIfAbsent(key, request);
+		if(existing != null) {
+			try {
+				return existing.get();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new TautException(e);
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof TautException) {
+					throw (TautException)e.getCause();
+				} else if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
 				}
+				throw new TautException(e.getCause());
 			}
+		}
+
+		try {
+			final JSONObject rtn = staticPost(this.transport, Optional.of(this.rateLimiter), route, args, TautJSONCodec.getDefault()::parse);
+			request.complete(rtn);
+			return rtn;
+		} catch(Throwable e) {
+			// Anything at all, Errors included: waiters block on 'request' until it's completed
+			request.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key, request);
+		}
+	}
+
+	// Like post(), but the elements of the array 'arrayKey' in the response are parsed one at a time and passed to 'fn' instead of being stored.
+	// The rest of the response is returned as usual.
+	// This avoids holding the whole document in memory for huge responses like users.list.
+	// 'fn' runs while the response is still being read, so the transport's pooled connection stays checked out until the last element.
+	// Anything 'fn' does that makes an API call needs a second connection, and blocks forever if the pool has none left (e.g. setMaxConnections(1))
+	<T> JSONObject postStreaming(String route, JSONObject args, String arrayKey, Consumer<T> fn) throws TautException {
+		args.put("token", this.token);
+		return staticPost(this.transport, Optional.of(this.rateLimiter), route, args, reader -> TautJSONCodec.getDefault().parseStreaming(reader, arrayKey, fn));
+	}
+
+	CompletableFuture<JSONObject> postAsync(String route) {
+		return this.postAsync(route, new JSONObject());
+	}
+
+	CompletableFuture<JSONObject> postAsync(String route, JSONObject args) {
+		return this.async(() -> this.post(route, args));
+	}
 
+	private static JSONObject staticPost(TautHTTPTransport transport, Optional<TautRateLimiter> limiter, String route, JSONObject args, ResponseParser parser) throws TautException {
+		final HttpPost post = new HttpPost(transport.getApiUrl() + route);
+		{
+			final HttpEntity entity = encodeArgs(args);
 			if(VERBOSE) {
 				System.out.printf("[Tx API] %s ", route);
 				try {
@@ -91,18 +238,43 @@ public class TautConnection {
 			post.setEntity(entity);
 		}
 
-		final JSONObject rtn;
-		try {
-			final HttpResponse resp = client.execute(post);
-			final HttpEntity entity = resp.getEntity();
-			final Scanner s = new Scanner(entity.getContent());
-			final StringBuffer buffer = new StringBuffer();
-			while(s.hasNextLine()) {
-				buffer.append(s.nextLine());
+		if(limiter.isPresent()) {
+			limiter.get().acquire(route, args);
+		}
+
+		JSONObject rtn = null;
+		for(int attempt = 1; rtn == null; attempt++) {
+			long retryAfter = 0;
+			try(final CloseableHttpResponse resp = transport.execute(post)) {
+				final HttpEntity entity = resp.getEntity();
+				if(resp.getStatusLine().getStatusCode() == HTTP_TOO_MANY_REQUESTS) {
+					EntityUtils.consume(entity);
+					if(!limiter.isPresent() || attempt > TautRateLimiter.MAX_RETRIES) {
+						// The body isn't JSON (often it's empty), so report the same error Slack uses when it does send one
+						throw new APIError(route, args, new JSONObject().put("ok", false).put("error", "ratelimited").put("retry_after", getRetryAfter(resp)));
+					}
+					retryAfter = getRetryAfter(resp);
+				} else {
+					// Parse straight from the response stream rather than reading the whole body into a string first
+					final Charset charset = Optional.ofNullable(ContentType.getOrDefault(entity).getCharset()).orElse(StandardCharsets.UTF_8);
+					try(final Reader reader = new InputStreamReader(entity.getContent(), charset)) {
+						rtn = parser.parse(reader);
+					} catch(JSONException e) {
+						throw new TautException(String.format("Malformed response from %s", route), e);
+					}
+					// Make sure the whole body is read so the connection can go back to the pool
+					EntityUtils.consume(entity);
+				}
+			} catch(IOException e) {
+				throw new TautException(e);
+			}
+
+			if(rtn == null) {
+				if(VERBOSE) {
+					System.out.printf("[Rx API] %s rate limited, retrying in %ds\n", route, retryAfter);
+				}
+				limiter.get().onRateLimited(route, args, retryAfter);
 			}
-			rtn = new JSONObject(buffer.toString());
-		} catch(IOException e) {
-			throw new TautException(e);
 		}
 
 		if(VERBOSE) {
@@ -114,8 +286,47 @@ public class TautConnection {
 		return rtn;
 	}
 
+	// Use a MultipartEntity iff there are byte[](s) in 'args'
+	// It's possible to use it in all cases, but the inefficiency bothers me
+	static HttpEntity encodeArgs(JSONObject args) throws TautException {
+		if(args.stream().map(args::get).anyMatch(e -> e instanceof byte[])) {
+			MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+			args.stream().forEach(key -> {
+				final Object val = args.get(key);
+				if(val instanceof byte[]) {
+					builder.addBinaryBody(key, (byte[])val, ContentType.APPLICATION_OCTET_STREAM, "file");
+				} else {
+					builder.addTextBody(key, val.toString());
+				}
+			});
+			return builder.build();
+		} else {
+			final List<NameValuePair> nvps = new LinkedList<>();
+			args.stream().forEach(key -> {
+				final Object val = args.get(key);
+				nvps.add(new BasicNameValuePair(key, val.toString()));
+			});
+
+			try {
+				return new UrlEncodedFormEntity(nvps, "UTF-8");
+			} catch(UnsupportedEncodingException e) {
+				throw new TautException(e);
+			}
+		}
+	}
+
+	private static long getRetryAfter(HttpResponse resp) {
+		final Header header = resp.getFirstHeader("Retry-After");
+		if(header != null) {
+			try {
+				return Long.parseLong(header.getValue().trim());
+			} catch(NumberFormatException e) {}
+		}
+		return 1;
+	}
+
 	public static String oauthAccess(String clientId, String clientSecret, String code) throws TautException {
-		final JSONObject json = staticPost("oauth.access", new JSONObject().put("client_id", clientId).put("client_secret", clientSecret).put("code", code));
+		final JSONObject json = staticPost(TautHTTPTransport.getDefault(), Optional.empty(), "oauth.access", new JSONObject().put("client_id", clientId).put("client_secret", clientSecret).put("code", code), TautJSONCodec.getDefault()::parse);
 		return json.getString("access_token");
 	}
 
@@ -123,22 +334,51 @@ public class TautConnection {
 		return TautChannel.getById(this, id);
 	}
 
+	public CompletableFuture<TautChannel> getChannelByIdAsync(String id) {
+		return TautChannel.getById(this, id).loadAsync();
+	}
+
 	public TautChannel getChannelByName(String name) throws TautException {
 		return TautChannel.getByName(this, name);
 	}
 
+	public CompletableFuture<TautChannel> getChannelByNameAsync(String name) {
+		return this.async(() -> this.getChannelByName(name));
+	}
+
 	public List<TautChannel> getChannels() throws TautException {
 		return TautChannel.getAll(this);
 	}
 
+	public List<TautChannel> getChannels(boolean parallel) throws TautException {
+		return TautChannel.getAll(this, parallel);
+	}
+
+	public CompletableFuture<List<TautChannel>> getChannelsAsync() {
+		return this.async(this::getChannels);
+	}
+
+	// 'fn' runs while channels.list is still being read and holds an HTTP connection; see TautChannel.forEach()
+	public void forEachChannel(Consumer<TautChannel> fn) throws TautException {
+		TautChannel.forEach(this, fn);
+	}
+
 	public TautChannel createChannel(String name) throws TautException {
 		return TautChannel.create(this, name);
 	}
 
+	public TautFile getFileById(String id) {
+		return TautFile.getById(this, id);
+	}
+
 	public TautFile uploadFile(TautFileUpload file) throws TautException {
 		return TautFile.upload(this, file);
 	}
 
+	public CompletableFuture<TautFile> uploadFileAsync(TautFileUpload file) {
+		return this.async(() -> this.uploadFile(file));
+	}
+
 	public TautUser getSelf() {
 		return this.me;
 	}
@@ -147,14 +387,35 @@ public class TautConnection {
 		return TautUser.getById(this, id);
 	}
 
+	public CompletableFuture<TautUser> getUserByIdAsync(String id) {
+		return TautUser.getById(this, id).loadAsync();
+	}
+
 	public TautUser getUserByName(String name) throws TautException {
 		return TautUser.getByName(this, name);
 	}
 
+	public CompletableFuture<TautUser> getUserByNameAsync(String name) {
+		return this.async(() -> this.getUserByName(name));
+	}
+
 	public List<TautUser> getUsers() throws TautException {
 		return TautUser.getAll(this);
 	}
 
+	public List<TautUser> getUsers(boolean parallel) throws TautException {
+		return TautUser.getAll(this, parallel);
+	}
+
+	public CompletableFuture<List<TautUser>> getUsersAsync() {
+		return this.async(this::getUsers);
+	}
+
+	// 'fn' runs while users.list is still being read and holds an HTTP connection; see TautUser.forEach()
+	public void forEachUser(Consumer<TautUser> fn) throws TautException {
+		TautUser.forEach(this, fn);
+	}
+
 	public FileIterable iterFiles() throws TautException {
 		return new FileIterable(this);
 	}
@@ -173,13 +434,131 @@ public class TautConnection {
 
 	public java.util.Map<String, String> emojiList() throws TautException {
 		final JSONObject res = this.post("emoji.list");
+		this.snapshot.ifPresent(snapshot -> snapshot.set("emoji", res.getJSONObject("emoji")));
 		return new Map<String, String>() {{
 			res.getJSONObject("emoji").forEach((String k, String v) -> this.put(k, v));
 		}};
 	}
 
+	// Primes the object caches from an rtm.start response, which includes the whole workspace.
+	// Channels missing their member list (e.g. ones we aren't in) are skipped and will be loaded on demand
+	void hydrate(JSONObject state) {
+		state.<JSONObject>streamArray("users").forEach(json -> TautUser.fromJSON(this, json));
+		state.<JSONObject>streamArray("bots").forEach(json -> TautUser.fromJSON(this, json));
+		Stream.concat(state.<JSONObject>streamArray("channels"), state.<JSONObject>streamArray("groups"))
+				.filter(json -> json.has("members"))
+				.forEach(json -> TautChannel.fromJSON(this, json));
+		state.<JSONObject>streamArray("ims")
+				.filter(json -> json.optBoolean("is_im", true) && !json.optBoolean("is_user_deleted", false))
+				.forEach(json -> TautDirectChannel.fromJSON(this, json));
+	}
+
+	// Loads the workspace snapshot in 'file', if there is one, into the caches so lookups work immediately.
+	// The snapshot is then refreshed from the API in the background (the returned future completes when that's done),
+	// and rewritten after every refresh and every rtm.start
+	public CompletableFuture<Void> enableSnapshot(File file) throws TautException {
+		final WorkspaceSnapshot snapshot = new WorkspaceSnapshot(file, this.teamId, this.me.getId());
+		snapshot.load().ifPresent(this::hydrate);
+		this.snapshot = Optional.of(snapshot);
+		return this.async(() -> {
+			this.refreshSnapshot();
+			return null;
+		});
+	}
+
+	// Slack's list methods can't return only what changed since a given time, so users, channels and groups are re-read in full
+	// (the event stream is what keeps the caches current between refreshes). Each element is compared with the snapshot as it streams in,
+	// and only new or changed ones are cached and stored; ones that are gone are dropped. The file is only rewritten if something differed.
+	// im.list doesn't have enough to build an IM from, so it's only used to drop IMs that were closed; new ones come from rtm.start or im.open.
+	// Nothing lists bots, so bots.info is called for the bot of each new or changed bot user that isn't in the snapshot yet
+	public void refreshSnapshot() throws TautException {
+		final WorkspaceSnapshot snapshot = this.snapshot.orElseThrow(() -> new TautException("Snapshot not enabled"));
+		final Set<String> botIds = new HashSet<>();
+		boolean changed = this.refreshSnapshotList(snapshot, "users", "users.list", "members", json -> {
+			TautUser.fromJSON(this, json);
+			final JSONObject profile = json.optJSONObject("profile");
+			if(profile != null && profile.has("bot_id")) {
+				botIds.add(profile.getString("bot_id"));
+			}
+		});
+		changed |= this.refreshSnapshotList(snapshot, "channels", "channels.list", "channels", json -> TautChannel.fromJSON(this, json));
+		changed |= this.refreshSnapshotList(snapshot, "groups", "groups.list", "groups", json -> TautChannel.fromJSON(this, json));
+
+		final Set<String> imIds = new HashSet<>();
+		this.postStreaming("im.list", new JSONObject(), "ims", (JSONObject json) -> imIds.add(json.getString("id")));
+		changed |= snapshot.retain("ims", imIds);
+
+		for(String botId : botIds) {
+			if(!snapshot.has("bots", botId)) {
+				try {
+					final JSONObject bot = this.post("bots.info", new JSONObject().put("bot", botId)).getJSONObject("bot");
+					TautUser.fromJSON(this, bot);
+					changed |= snapshot.merge("bots", bot);
+				} catch(TautException | JSONException e) {
+					// Deleted bots can still have bot users
+				}
+			}
+		}
+
+		changed |= snapshot.set("emoji", this.post("emoji.list").getJSONObject("emoji"));
+		if(changed) {
+			snapshot.save();
+		}
+	}
+
+	// Emoji from the snapshot if we have them, otherwise the same as emojiList()
+	public java.util.Map<String, String> emojiListCached() throws TautException {
+		final Optional<JSONObject> emoji = this.snapshot.flatMap(WorkspaceSnapshot::getEmoji);
+		if(!emoji.isPresent()) {
+			return this.emojiList();
+		}
+		return new Map<String, String>() {{
+			emoji.get().forEach((String k, String v) -> this.put(k, v));
+		}};
+	}
+
+	// Streams 'route' into the snapshot's list 'key', passing new and changed elements to 'fn'. Returns true if the list changed
+	private boolean refreshSnapshotList(WorkspaceSnapshot snapshot, String key, String route, String arrayKey, Consumer<JSONObject> fn) throws TautException {
+		final Set<String> ids = new HashSet<>();
+		final boolean[] changed = {false};
+		this.postStreaming(route, new JSONObject(), arrayKey, (JSONObject json) -> {
+			ids.add(json.getString("id"));
+			if(snapshot.merge(key, json)) {
+				fn.accept(json);
+				changed[0] = true;
+			}
+		});
+		return snapshot.retain(key, ids) || changed[0];
+	}
+
+	// Stores the workspace data from an rtm.start response in the snapshot, if there is one
+	void updateSnapshot(JSONObject state) throws TautException {
+		if(this.snapshot.isPresent()) {
+			for(String key : WorkspaceSnapshot.KEYS) {
+				if(state.has(key)) {
+					this.snapshot.get().set(key, state.get(key));
+				}
+			}
+			this.snapshot.get().save();
+		}
+	}
+
+	public String getTeamId() {
+		return this.teamId;
+	}
+
+	// The connection gets a dispatcher of its own, which it shuts down when disconnected
 	public TautRTMConnection rtmStart() throws TautException {
-		return new TautRTMConnection(this);
+		return new TautRTMConnection(this, new TautEventDispatcher(), ClientManager.createClient(), true);
+	}
+
+	// Events are handed to the listeners through 'dispatcher'. It can be shared between RTM connections
+	public TautRTMConnection rtmStart(TautEventDispatcher dispatcher) throws TautException {
+		return new TautRTMConnection(this, dispatcher);
+	}
+
+	TautRTMConnection rtmStart(TautEventDispatcher dispatcher, ClientManager cm) throws TautException {
+		return new TautRTMConnection(this, dispatcher, cm);
 	}
 
 	// ts is frequently used as an ID, so in those cases we keep them as strings to avoid precision problems when converting back.
@@ -48,9 +48,11 @@ public class TautDirectChannel extends TautAbstractChannel {
 		this.user = this.conn.getUserById(json.getString("user"));
 		this.created = json.getLong("created");
 		this.lastRead = json.getString("last_read");
-		this.latest = json.isNull("latest") ? Optional.empty() : Optional.of(new TautMessage(this, json.getJSONObject("latest")));
-		this.unreadCount = json.getInt("unread_count");
-		this.unreadCountDisplay = json.getInt("unread_count_display");
+		// rtm.start with simple_latest only gives the timestamp of the latest message, not the message itself
+		this.latest = (json.optJSONObject("latest") == null || !json.getJSONObject("latest").has("text")) ? Optional.empty() : Optional.of(new TautMessage(this, json.getJSONObject("latest")));
+		// rtm.start with no_unreads leaves these out
+		this.unreadCount = json.optInt("unread_count", 0);
+		this.unreadCountDisplay = json.optInt("unread_count_display", 0);
 	}
 
 	@Override protected void prepJSONObjectForPost(JSONObject args) {
@@ -65,6 +67,33 @@ public class TautDirectChannel extends TautAbstractChannel {
 		this.post("im.close");
 	}
 
+	// Opening an IM is an API call, so the channel for each user is kept once we have it
+	static TautDirectChannel getByUser(TautUser user) throws TautException {
+		final TautDirectChannel cached = user.conn.directChannels.get(user.getId());
+		if(cached != null) {
+			return cached;
+		}
+		final TautDirectChannel rtn = new TautDirectChannel(user);
+		final TautDirectChannel existing = user.conn.directChannels.putIfAbsent(user.getId(), rtn);
+		if(existing != null) {
+			return existing;
+		}
+		user.conn.directChannelsById.put(rtn.getId(), rtn);
+		return rtn;
+	}
+
+	static TautDirectChannel fromJSON(TautConnection conn, JSONObject json) {
+		final TautDirectChannel rtn = new TautDirectChannel(conn, json);
+		conn.directChannels.put(json.getString("user"), rtn);
+		conn.directChannelsById.put(rtn.getId(), rtn);
+		return rtn;
+	}
+
+	// Only IMs that have already been opened or loaded are known by ID
+	static Optional<TautDirectChannel> getById(TautConnection conn, String id) {
+		return Optional.ofNullable(conn.directChannelsById.get(id));
+	}
+
 	public static List<TautDirectChannel> getAll(TautConnection conn) throws TautException {
 		// The data that comes back from im.list is missing many of the fields from im.info, so we just lazy load by ID instead of populating now
 		final JSONObject res = conn.post("im.list");
@@ -73,7 +102,7 @@ public class TautDirectChannel extends TautAbstractChannel {
 		for(int i = 0; i < ims.length(); i++) {
 			final JSONObject json = ims.getJSONObject(i);
 			if(json.optBoolean("is_im", true) && !json.optBoolean("is_user_deleted", false)) {
-				rtn.add(new TautDirectChannel(new TautUser(conn, json.getString("user"))));
+				rtn.add(getByUser(conn.getUserById(json.getString("user"))));
 			}
 		}
 		return rtn;
@@ -0,0 +1,622 @@
+package com.mrozekma.taut;
+
+import com.mrozekma.taut.TautEventListener.EventType;
+import org.json.JSONException;
+
+import java.util.*;
+
+import static com.mrozekma.taut.TautEventListener.EventType.*;
+
+// A decoded RTM event. Every EventType maps to one of the immutable classes below; events with the same payload shape share a class.
+// Each class pulls the fields it needs out of the JSON once, in its constructor, and hands itself to the matching TautEventListener callback
+// through dispatch(), so listeners get typed fields without a lookup per access or a chain of instanceof checks.
+// Users, channels and files are held by ID; the getters that return objects go through the connection's caches
+public abstract class TautEvent {
+	@FunctionalInterface
+	private interface Decoder {
+		TautEvent decode(TautConnection conn, EventType type, JSONObject json);
+	}
+
+	private static final java.util.Map<EventType, Decoder> decoders = new EnumMap<>(EventType.class);
+	private static void register(Decoder decoder, EventType... types) {
+		for(EventType type : types) {
+			decoders.put(type, decoder);
+		}
+	}
+	static {
+		register(Simple::new, accounts_changed, commands_changed, hello, team_migration_started, team_profile_change, team_profile_delete, team_profile_reorder, url_verification);
+		register(Bot::new, bot_added, bot_changed);
+		register(Channel::new, channel_archive, channel_deleted, channel_left, channel_unarchive, group_archive, group_close, group_left, group_open, group_unarchive, im_close, im_open);
+		register(ChannelInfo::new, channel_created, channel_joined, channel_rename, group_joined, group_rename, im_created);
+		register(ChannelMarked::new, channel_marked, group_marked, im_marked);
+		register(HistoryChanged::new, channel_history_changed, group_history_changed, im_history_changed);
+		register(Dnd::new, dnd_updated, dnd_updated_user);
+		register(SettingChange::new, email_domain_changed, pref_change, team_domain_change, team_plan_change, team_pref_change, team_rename);
+		register(EmojiChanged::new, emoji_changed);
+		register(File::new, file_change, file_created, file_deleted, file_public, file_shared, file_unshared);
+		register(FileComment::new, file_comment_added, file_comment_deleted, file_comment_edited);
+		register(Message::new, message);
+		register(Pin::new, pin_added, pin_removed);
+		register(Presence::new, manual_presence_change, presence_change);
+		register(Reaction::new, reaction_added, reaction_removed);
+		register(ReconnectUrl::new, reconnect_url);
+		register(Star::new, star_added, star_removed);
+		register(Subteam::new, subteam_created, subteam_self_added, subteam_self_removed, subteam_updated);
+		register(User::new, team_join, user_change);
+		register(UserTyping::new, user_typing);
+	}
+
+	protected final TautConnection conn;
+	private final EventType type;
+	private final Optional<String> eventTs;
+
+	private TautEvent(TautConnection conn, EventType type, JSONObject json) {
+		this.conn = conn;
+		this.type = type;
+		this.eventTs = opt(json, "event_ts");
+	}
+
+	// Empty if the frame is missing fields its type should have. That isn't fatal; listeners still get the raw JSON
+	static Optional<TautEvent> decode(TautConnection conn, EventType type, JSONObject json) {
+		try {
+			return Optional.of(decoders.getOrDefault(type, Simple::new).decode(conn, type, json));
+		} catch(JSONException e) {
+			if(TautConnection.VERBOSE) {
+				System.out.format("[Rx RTM] Malformed %s event: %s\n", type, e.getMessage());
+			}
+			return Optional.empty();
+		}
+	}
+
+	public TautConnection getConnection() { return this.conn; }
+	public EventType getType() { return this.type; }
+	public Optional<String> getEventTs() { return this.eventTs; }
+
+	// Calls the listener callback for this event's class
+	abstract void dispatch(TautEventListener listener);
+
+	@Override public String toString() {
+		return String.format("%s(%s)", this.getClass().getSimpleName(), this.type);
+	}
+
+	private static Optional<String> opt(JSONObject json, String key) {
+		return (json.has(key) && !json.isNull(key)) ? Optional.of(json.getString(key)) : Optional.empty();
+	}
+
+	private static List<String> strings(JSONArray arr) {
+		return Collections.unmodifiableList(Arrays.asList(arr.<String>stream().toArray(String[]::new)));
+	}
+
+	// DM IDs can't be looked up directly; use an already open DM if there is one, otherwise open one with 'userId'
+	static TautAbstractChannel resolveChannel(TautConnection conn, String channelId, Optional<String> userId) throws TautException {
+		switch(channelId.isEmpty() ? '\0' : channelId.charAt(0)) {
+		case 'C':
+		case 'G':
+			return conn.getChannelById(channelId);
+		case 'D':
+			final Optional<TautDirectChannel> known = TautDirectChannel.getById(conn, channelId);
+			if(known.isPresent()) {
+				return known.get();
+			}
+			if(userId.isPresent()) {
+				return conn.getUserById(userId.get()).getDirectChannel();
+			}
+			break;
+		}
+		throw new TautException("Unable to construct channel " + channelId);
+	}
+
+	// hello, accounts_changed, and other events with nothing to decode
+	public static final class Simple extends TautEvent {
+		private Simple(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onSimpleEvent(this);
+		}
+	}
+
+	// bot_added, bot_changed
+	public static final class Bot extends TautEvent {
+		private final String botId;
+		private final Optional<String> name;
+
+		private Bot(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			final JSONObject bot = json.getJSONObject("bot");
+			this.botId = bot.getString("id");
+			this.name = opt(bot, "name");
+		}
+
+		public String getBotId() { return this.botId; }
+		public Optional<String> getName() { return this.name; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onBotEvent(this);
+		}
+	}
+
+	// Events about a channel that only carry its ID: archiving, leaving, deleting, opening and closing
+	public static final class Channel extends TautEvent {
+		private final String channelId;
+		private final Optional<String> userId;
+
+		private Channel(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.channelId = json.getString("channel");
+			this.userId = opt(json, "user");
+		}
+
+		public String getChannelId() { return this.channelId; }
+		public Optional<String> getUserId() { return this.userId; }
+
+		public TautAbstractChannel getChannel() throws TautException {
+			return resolveChannel(this.conn, this.channelId, this.userId);
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onChannelEvent(this);
+		}
+	}
+
+	// Events that carry a channel object: creating, joining and renaming. The cached channel has already been updated by the time listeners see these
+	public static final class ChannelInfo extends TautEvent {
+		private final String channelId;
+		private final Optional<String> name;
+		private final Optional<String> userId; // The creator for channel_created, the other user for im_created
+
+		private ChannelInfo(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			final JSONObject channel = json.getJSONObject("channel");
+			this.channelId = channel.getString("id");
+			this.name = opt(channel, "name");
+			this.userId = json.has("user") ? opt(json, "user") : opt(channel, "creator");
+		}
+
+		public String getChannelId() { return this.channelId; }
+		public Optional<String> getName() { return this.name; }
+		public Optional<String> getUserId() { return this.userId; }
+
+		public TautAbstractChannel getChannel() throws TautException {
+			return resolveChannel(this.conn, this.channelId, this.userId);
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onChannelInfoEvent(this);
+		}
+	}
+
+	// channel_marked, group_marked, im_marked
+	public static final class ChannelMarked extends TautEvent {
+		private final String channelId;
+		private final String ts;
+
+		private ChannelMarked(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.channelId = json.getString("channel");
+			this.ts = json.getString("ts");
+		}
+
+		public String getChannelId() { return this.channelId; }
+		public String getTs() { return this.ts; }
+
+		public TautAbstractChannel getChannel() throws TautException {
+			return resolveChannel(this.conn, this.channelId, Optional.empty());
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onChannelMarked(this);
+		}
+	}
+
+	// channel_history_changed, group_history_changed, im_history_changed. Slack doesn't say which channel
+	public static final class HistoryChanged extends TautEvent {
+		private final String latest;
+		private final String ts;
+
+		private HistoryChanged(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.latest = json.getString("latest");
+			this.ts = json.getString("ts");
+		}
+
+		public String getLatest() { return this.latest; }
+		public String getTs() { return this.ts; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onHistoryChanged(this);
+		}
+	}
+
+	// dnd_updated, dnd_updated_user
+	public static final class Dnd extends TautEvent {
+		private final String userId;
+		private final boolean enabled;
+		private final long nextStart, nextEnd;
+		private final boolean snoozeEnabled;
+		private final long snoozeEnd;
+
+		private Dnd(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.userId = json.getString("user");
+			final JSONObject status = json.getJSONObject("dnd_status");
+			this.enabled = status.optBoolean("dnd_enabled", false);
+			this.nextStart = status.optLong("next_dnd_start_ts", 0);
+			this.nextEnd = status.optLong("next_dnd_end_ts", 0);
+			// dnd_updated_user leaves the snooze fields out
+			this.snoozeEnabled = status.optBoolean("snooze_enabled", false);
+			this.snoozeEnd = status.optLong("snooze_endtime", 0);
+		}
+
+		public String getUserId() { return this.userId; }
+		public TautUser getUser() { return this.conn.getUserById(this.userId); }
+		public boolean isEnabled() { return this.enabled; }
+		public Date getNextStart() { return TautConnection.tsApiToHost(this.nextStart); }
+		public Date getNextEnd() { return TautConnection.tsApiToHost(this.nextEnd); }
+		public boolean isSnoozeEnabled() { return this.snoozeEnabled; }
+		public Optional<Date> getSnoozeEnd() { return this.snoozeEnabled ? Optional.of(TautConnection.tsApiToHost(this.snoozeEnd)) : Optional.empty(); }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onDndUpdated(this);
+		}
+	}
+
+	// A single team or user setting changing: the team's name, domain, email domain or plan, or a team or user pref
+	public static final class SettingChange extends TautEvent {
+		private final String name;
+		private final Optional<String> value;
+
+		private SettingChange(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			switch(type) {
+			case email_domain_changed:
+				this.name = "email_domain";
+				this.value = opt(json, "email_domain");
+				break;
+			case team_domain_change:
+				this.name = "domain";
+				this.value = opt(json, "domain");
+				break;
+			case team_plan_change:
+				this.name = "plan";
+				this.value = opt(json, "plan");
+				break;
+			case team_rename:
+				this.name = "name";
+				this.value = opt(json, "name");
+				break;
+			default:
+				// pref_change and team_pref_change carry the name and value directly. Values aren't always strings, so they're kept in JSON form
+				this.name = json.getString("name");
+				this.value = (json.has("value") && !json.isNull("value")) ? Optional.of(json.get("value").toString()) : Optional.empty();
+			}
+		}
+
+		public String getName() { return this.name; }
+		public Optional<String> getValue() { return this.value; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onSettingChange(this);
+		}
+	}
+
+	// emoji_changed
+	public static final class EmojiChanged extends TautEvent {
+		private final String subtype; // "add" or "remove"
+		private final List<String> names;
+		private final Optional<String> value; // The new emoji's URL or alias, for "add"
+
+		private EmojiChanged(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.subtype = json.optString("subtype", "");
+			if(json.has("names")) {
+				this.names = strings(json.getJSONArray("names"));
+			} else {
+				this.names = json.has("name") ? Collections.singletonList(json.getString("name")) : Collections.emptyList();
+			}
+			this.value = opt(json, "value");
+		}
+
+		public String getSubtype() { return this.subtype; }
+		public List<String> getNames() { return this.names; }
+		public Optional<String> getValue() { return this.value; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onEmojiChanged(this);
+		}
+	}
+
+	// file_change, file_created, file_deleted, file_public, file_shared, file_unshared
+	public static final class File extends TautEvent {
+		private final String fileId;
+
+		private File(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.fileId = json.has("file_id") ? json.getString("file_id") : json.getJSONObject("file").getString("id");
+		}
+
+		public String getFileId() { return this.fileId; }
+		public TautFile getFile() { return this.conn.getFileById(this.fileId); }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onFileEvent(this);
+		}
+	}
+
+	// file_comment_added, file_comment_deleted, file_comment_edited
+	public static final class FileComment extends TautEvent {
+		private final String fileId;
+		private final String commentId;
+		private final Optional<String> userId, comment; // Not included for file_comment_deleted
+
+		private FileComment(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.fileId = json.has("file_id") ? json.getString("file_id") : json.getJSONObject("file").getString("id");
+			final JSONObject comment = json.optJSONObject("comment");
+			if(comment == null) {
+				this.commentId = json.getString("comment");
+				this.userId = Optional.empty();
+				this.comment = Optional.empty();
+			} else {
+				this.commentId = comment.getString("id");
+				this.userId = opt(comment, "user");
+				this.comment = opt(comment, "comment");
+			}
+		}
+
+		public String getFileId() { return this.fileId; }
+		public TautFile getFile() { return this.conn.getFileById(this.fileId); }
+		public String getCommentId() { return this.commentId; }
+		public Optional<String> getUserId() { return this.userId; }
+		public Optional<String> getComment() { return this.comment; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onFileCommentEvent(this);
+		}
+	}
+
+	// message. TautEventListener.onMessage() gets the full TautMessage; this is the cheap form, with no channel lookup
+	public static final class Message extends TautEvent {
+		private final String channelId;
+		private final Optional<String> userId;
+		private final Optional<String> subtype;
+		private final Optional<String> text;
+		private final String ts;
+		private final Optional<String> threadTs;
+
+		private Message(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.channelId = json.getString("channel");
+			this.userId = opt(json, "user");
+			this.subtype = opt(json, "subtype");
+			this.text = opt(json, "text");
+			this.ts = json.getString("ts");
+			this.threadTs = opt(json, "thread_ts");
+		}
+
+		public String getChannelId() { return this.channelId; }
+		public Optional<String> getUserId() { return this.userId; }
+		public Optional<String> getSubtype() { return this.subtype; }
+		public Optional<String> getText() { return this.text; }
+		public String getTs() { return this.ts; }
+		public Optional<String> getThreadTs() { return this.threadTs; }
+
+		public TautAbstractChannel getChannel() throws TautException {
+			return resolveChannel(this.conn, this.channelId, this.userId);
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onMessageEvent(this);
+		}
+	}
+
+	// The target of a pin, star or reaction: a message, file, file comment, or (for stars) a channel
+	public static final class Item {
+		private final String type;
+		private final Optional<String> channelId, ts, fileId, commentId;
+
+		private Item(JSONObject json) {
+			this.type = json.getString("type");
+			this.channelId = json.has("channel") ? opt(json, "channel") : opt(json, "channel_id");
+			final JSONObject message = json.optJSONObject("message");
+			this.ts = json.has("ts") ? opt(json, "ts") : (message == null ? Optional.empty() : opt(message, "ts"));
+			final Object file = json.opt("file");
+			this.fileId = (file instanceof JSONObject) ? opt((JSONObject)file, "id") : opt(json, "file");
+			final Object comment = json.opt("comment");
+			this.commentId = (comment instanceof JSONObject) ? opt((JSONObject)comment, "id") : opt(json, "file_comment");
+		}
+
+		public String getType() { return this.type; }
+		public Optional<String> getChannelId() { return this.channelId; }
+		public Optional<String> getTs() { return this.ts; }
+		public Optional<String> getFileId() { return this.fileId; }
+		public Optional<String> getCommentId() { return this.commentId; }
+
+		@Override public String toString() {
+			return String.format("Item(%s)", this.type);
+		}
+	}
+
+	// pin_added, pin_removed
+	public static final class Pin extends TautEvent {
+		private final String userId;
+		private final String channelId;
+		private final Item item;
+
+		private Pin(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.userId = json.getString("user");
+			this.channelId = json.getString("channel_id");
+			this.item = new Item(json.getJSONObject("item"));
+		}
+
+		public String getUserId() { return this.userId; }
+		public TautUser getUser() { return this.conn.getUserById(this.userId); }
+		public String getChannelId() { return this.channelId; }
+		public Item getItem() { return this.item; }
+
+		public TautAbstractChannel getChannel() throws TautException {
+			return resolveChannel(this.conn, this.channelId, Optional.empty());
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onPinEvent(this);
+		}
+	}
+
+	// presence_change, manual_presence_change. Batched presence_change events list several users
+	public static final class Presence extends TautEvent {
+		private final List<String> userIds;
+		private final String presence;
+
+		private Presence(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			if(json.has("users")) {
+				this.userIds = strings(json.getJSONArray("users"));
+			} else if(json.has("user")) {
+				this.userIds = Collections.singletonList(json.getString("user"));
+			} else {
+				// manual_presence_change is always about us
+				this.userIds = Collections.singletonList(conn.getSelf().getId());
+			}
+			this.presence = json.getString("presence");
+		}
+
+		public List<String> getUserIds() { return this.userIds; }
+		public String getPresence() { return this.presence; }
+		public boolean isActive() { return this.presence.equals("active"); }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onPresenceChange(this);
+		}
+	}
+
+	// reaction_added, reaction_removed
+	public static final class Reaction extends TautEvent {
+		private final String userId;
+		private final String reaction;
+		private final Optional<String> itemUserId;
+		private final Item item;
+
+		private Reaction(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.userId = json.getString("user");
+			this.reaction = json.getString("reaction");
+			this.itemUserId = opt(json, "item_user");
+			this.item = new Item(json.getJSONObject("item"));
+		}
+
+		public String getUserId() { return this.userId; }
+		public TautUser getUser() { return this.conn.getUserById(this.userId); }
+		public String getReaction() { return this.reaction; }
+		public Optional<String> getItemUserId() { return this.itemUserId; }
+		public Item getItem() { return this.item; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onReactionEvent(this);
+		}
+	}
+
+	// reconnect_url. TautRTMConnection already keeps track of the URL
+	public static final class ReconnectUrl extends TautEvent {
+		private final String url;
+
+		private ReconnectUrl(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.url = json.getString("url");
+		}
+
+		public String getUrl() { return this.url; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onReconnectUrl(this);
+		}
+	}
+
+	// star_added, star_removed
+	public static final class Star extends TautEvent {
+		private final String userId;
+		private final Item item;
+
+		private Star(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.userId = json.getString("user");
+			this.item = new Item(json.getJSONObject("item"));
+		}
+
+		public String getUserId() { return this.userId; }
+		public TautUser getUser() { return this.conn.getUserById(this.userId); }
+		public Item getItem() { return this.item; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onStarEvent(this);
+		}
+	}
+
+	// subteam_created, subteam_updated, subteam_self_added, subteam_self_removed
+	public static final class Subteam extends TautEvent {
+		private final String subteamId;
+		private final Optional<String> handle;
+
+		private Subteam(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			final JSONObject subteam = json.optJSONObject("subteam");
+			if(subteam == null) {
+				this.subteamId = json.getString("subteam_id");
+				this.handle = Optional.empty();
+			} else {
+				this.subteamId = subteam.getString("id");
+				this.handle = opt(subteam, "handle");
+			}
+		}
+
+		public String getSubteamId() { return this.subteamId; }
+		public Optional<String> getHandle() { return this.handle; }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onSubteamEvent(this);
+		}
+	}
+
+	// team_join, user_change. The cached user has already been updated by the time listeners see these
+	public static final class User extends TautEvent {
+		private final String userId;
+
+		private User(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.userId = json.getJSONObject("user").getString("id");
+		}
+
+		public String getUserId() { return this.userId; }
+		public TautUser getUser() { return this.conn.getUserById(this.userId); }
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onUserEvent(this);
+		}
+	}
+
+	// user_typing
+	public static final class UserTyping extends TautEvent {
+		private final String channelId;
+		private final String userId;
+
+		private UserTyping(TautConnection conn, EventType type, JSONObject json) {
+			super(conn, type, json);
+			this.channelId = json.getString("channel");
+			this.userId = json.getString("user");
+		}
+
+		public String getChannelId() { return this.channelId; }
+		public String getUserId() { return this.userId; }
+		public TautUser getUser() { return this.conn.getUserById(this.userId); }
+
+		public TautAbstractChannel getChannel() throws TautException {
+			return resolveChannel(this.conn, this.channelId, Optional.of(this.userId));
+		}
+
+		@Override void dispatch(TautEventListener listener) {
+			listener.onUserTyping(this);
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package com.mrozekma.taut;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Runs RTM event listeners off the websocket thread, so a slow listener doesn't stop us reading from the socket (and answering pings).
+// Events wait in a bounded queue for a worker thread; 'overflowPolicy' decides what happens when the queue is full.
+// With a single thread (the default) events are handled in the order they arrived.
+// A striped dispatcher (see striped()) instead gives each thread its own queue and sends every event for a given channel to the same one,
+// so events within a channel stay in order while different channels are handled in parallel
+public class TautEventDispatcher {
+	public enum OverflowPolicy {
+		block, // Wait for space in the queue. This stalls the websocket thread, but never loses events
+		dropNewest, // Drop the event that didn't fit
+		dropOldest, // Drop the longest-waiting event to make room
+		callerRuns, // Handle the event on the websocket thread
+	}
+
+	private final int threads;
+	private final int queueCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private final boolean striped;
+	private final ThreadPoolExecutor[] executors;
+	private volatile Consumer<Throwable> errorHandler = Throwable::printStackTrace;
+
+	private final AtomicLong dispatched = new AtomicLong(), dropped = new AtomicLong();
+	private final AtomicLong totalLag = new AtomicLong(), maxLag = new AtomicLong(); // nanoseconds
+	private final AtomicLong totalRun = new AtomicLong(), maxRun = new AtomicLong(); // nanoseconds
+	private final AtomicLong pending = new AtomicLong(); // Queued or running
+
+	private class Task implements Runnable {
+		private final long enqueued = System.nanoTime();
+		private final Runnable fn;
+
+		Task(Runnable fn) {
+			this.fn = fn;
+		}
+
+		@Override public void run() {
+			final long start = System.nanoTime();
+			final long lag = start - this.enqueued;
+			TautEventDispatcher.this.totalLag.addAndGet(lag);
+			TautEventDispatcher.this.maxLag.accumulateAndGet(lag, Math::max);
+			TautEventDispatcher.this.dispatched.incrementAndGet();
+			try {
+				this.fn.run();
+			} catch(Throwable e) {
+				TautEventDispatcher.this.errorHandler.accept(e);
+			} finally {
+				final long run = System.nanoTime() - start;
+				TautEventDispatcher.this.totalRun.addAndGet(run);
+				TautEventDispatcher.this.maxRun.accumulateAndGet(run, Math::max);
+				TautEventDispatcher.this.pending.decrementAndGet();
+			}
+		}
+	}
+
+	public TautEventDispatcher() {
+		this(1, 10000, OverflowPolicy.block);
+	}
+
+	public TautEventDispatcher(int threads, int queueCapacity, OverflowPolicy overflowPolicy) {
+		this(threads, queueCapacity, overflowPolicy, false);
+	}
+
+	private TautEventDispatcher(int threads, int queueCapacity, OverflowPolicy overflowPolicy, boolean striped) {
+		this.threads = threads;
+		this.queueCapacity = queueCapacity;
+		this.overflowPolicy = overflowPolicy;
+		this.striped = striped;
+
+		final AtomicInteger threadId = new AtomicInteger();
+		final ThreadFactory threadFactory = r -> {
+			final Thread thread = new Thread(r, "taut-rtm-dispatch-" + threadId.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		if(striped) {
+			this.executors = new ThreadPoolExecutor[threads];
+			for(int i = 0; i < threads; i++) {
+				this.executors[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), threadFactory, this::onOverflow);
+			}
+		} else {
+			this.executors = new ThreadPoolExecutor[] {
+				new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), threadFactory, this::onOverflow)
+			};
+		}
+	}
+
+	// One thread and queue per stripe; events for the same channel always go to the same stripe.
+	// 'queueCapacity' is per stripe
+	public static TautEventDispatcher striped(int stripes, int queueCapacity, OverflowPolicy overflowPolicy) {
+		return new TautEventDispatcher(stripes, queueCapacity, overflowPolicy, true);
+	}
+
+	// One stripe per core
+	public static TautEventDispatcher striped() {
+		return striped(Runtime.getRuntime().availableProcessors(), 10000, OverflowPolicy.block);
+	}
+
+	public int getThreads() { return this.threads; }
+	public int getQueueCapacity() { return this.queueCapacity; }
+	public OverflowPolicy getOverflowPolicy() { return this.overflowPolicy; }
+	public boolean isStriped() { return this.striped; }
+
+	// Called with anything thrown by a listener. Defaults to printing the stack trace
+	public TautEventDispatcher setErrorHandler(Consumer<Throwable> errorHandler) {
+		this.errorHandler = errorHandler;
+		return this;
+	}
+
+	// 'key' picks the stripe in a striped dispatcher. Events without a key all share one stripe
+	void dispatch(Optional<String> key, Runnable fn) {
+		final ThreadPoolExecutor executor = (this.executors.length == 1) ? this.executors[0] : this.executors[Math.floorMod(key.orElse("").hashCode(), this.executors.length)];
+		this.pending.incrementAndGet();
+		executor.execute(new Task(fn));
+	}
+
+	private void drop() {
+		this.dropped.incrementAndGet();
+		this.pending.decrementAndGet();
+	}
+
+	private void onOverflow(Runnable task, ThreadPoolExecutor executor) {
+		if(executor.isShutdown()) {
+			this.drop();
+			return;
+		}
+		switch(this.overflowPolicy) {
+		case block:
+			try {
+				executor.getQueue().put(task);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.drop();
+			}
+			break;
+		case dropNewest:
+			this.drop();
+			break;
+		case dropOldest:
+			if(executor.getQueue().poll() != null) {
+				this.drop();
+			}
+			executor.execute(task);
+			break;
+		case callerRuns:
+			task.run();
+			break;
+		}
+	}
+
+	public int getQueueDepth() { return Arrays.stream(this.executors).mapToInt(executor -> executor.getQueue().size()).sum(); }
+	public int getActiveCount() { return Arrays.stream(this.executors).mapToInt(ThreadPoolExecutor::getActiveCount).sum(); }
+	public long getDispatchedCount() { return this.dispatched.get(); }
+	public long getDroppedCount() { return this.dropped.get(); }
+	public long getMaxLagMillis() { return TimeUnit.NANOSECONDS.toMillis(this.maxLag.get()); }
+
+	// Queue depth of each stripe, to spot a hot channel. Not striped dispatchers have a single entry
+	public int[] getStripeQueueDepths() {
+		return Arrays.stream(this.executors).mapToInt(executor -> executor.getQueue().size()).toArray();
+	}
+
+	// Average time events spent queued before a listener started on them
+	public double getAverageLagMillis() {
+		final long dispatched = this.dispatched.get();
+		return (dispatched == 0) ? 0 : this.totalLag.get() / 1e6 / dispatched;
+	}
+
+	// Time listeners spent handling each event
+	public double getAverageHandlerMillis() {
+		final long dispatched = this.dispatched.get();
+		return (dispatched == 0) ? 0 : this.totalRun.get() / 1e6 / dispatched;
+	}
+
+	public long getMaxHandlerMillis() { return TimeUnit.NANOSECONDS.toMillis(this.maxRun.get()); }
+
+	public void resetMetrics() {
+		this.dispatched.set(0);
+		this.dropped.set(0);
+		this.totalLag.set(0);
+		this.maxLag.set(0);
+		this.totalRun.set(0);
+		this.maxRun.set(0);
+	}
+
+	// Waits until every event dispatched so far has been handled or dropped
+	public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(this.pending.get() > 0) {
+			if(System.nanoTime() - deadline > 0) {
+				return false;
+			}
+			Thread.sleep(1);
+		}
+		return true;
+	}
+
+	// Stops accepting events. Queued events are still handled
+	public void shutdown() {
+		for(ThreadPoolExecutor executor : this.executors) {
+			executor.shutdown();
+		}
+	}
+
+	public boolean isShutdown() {
+		return this.executors[0].isShutdown();
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for(ThreadPoolExecutor executor : this.executors) {
+			if(!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
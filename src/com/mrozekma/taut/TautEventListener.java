@@ -1,6 +1,6 @@
 package com.mrozekma.taut;
 
-import java.util.function.Function;
+import java.util.*;
 
 public interface TautEventListener {
 	enum EventType {
@@ -14,58 +14,72 @@ public interface TautEventListener {
 		reaction_added, reaction_removed, reconnect_url, star_added, star_removed, subteam_created, subteam_self_added,
 		subteam_self_removed, subteam_updated, team_domain_change, team_join, team_migration_started, team_plan_change,
 		team_pref_change, team_profile_change, team_profile_delete, team_profile_reorder, team_rename, url_verification,
-		user_change, user_typing
+		user_change, user_typing;
+
+		private static final java.util.Map<String, EventType> byName = new HashMap<>();
+		static {
+			for(EventType type : values()) {
+				byName.put(type.name(), type);
+			}
+		}
+
+		// Unlike valueOf(), unknown names aren't exceptional; Slack adds new event types all the time
+		public static Optional<EventType> lookup(String name) {
+			return Optional.ofNullable(byName.get(name));
+		}
 	}
 
-	@FunctionalInterface
-	interface ChannelCreator {
-		TautAbstractChannel makeChannel(JSONObject json) throws TautException;
+	Set<EventType> ALL_EVENT_TYPES = Collections.unmodifiableSet(EnumSet.allOf(EventType.class));
+
+	// The event types this listener handles. Events of any other type are never decoded for this listener,
+	// so listeners that only care about a few types should say so; on a busy workspace most traffic is user_typing and presence_change
+	default Set<EventType> getEventTypes() {
+		return ALL_EVENT_TYPES;
+	}
+
+	// Whether this listener wants events whose type isn't in EventType (or that have no type)
+	default boolean receivesUnknownEvents() {
+		return true;
 	}
 
+	default boolean isSubscribed(Optional<EventType> type) {
+		return type.isPresent() ? this.getEventTypes().contains(type.get()) : this.receivesUnknownEvents();
+	}
+
+	// Decodes 'json' and passes it on to fire(conn, json, event). TautRTMConnection decodes each frame once and calls the three-argument form directly
 	default void fire(TautConnection conn, JSONObject json) throws TautException {
-		final EventType type;
-		try {
-			type = EventType.valueOf(json.getString("type"));
-		} catch(IllegalArgumentException e) {
+		final Optional<TautEvent> event = EventType.lookup(json.optString("type", "")).flatMap(type -> TautEvent.decode(conn, type, json));
+		this.fire(conn, json, event);
+	}
+
+	// 'event' is shared between all the listeners receiving this frame. It's empty if the type is unknown or the frame couldn't be decoded;
+	// the typed callbacks are skipped then, but the JSON-based ones below still run
+	default void fire(TautConnection conn, JSONObject json, Optional<TautEvent> event) throws TautException {
+		final Optional<EventType> lookup = EventType.lookup(json.optString("type", ""));
+		if(!lookup.isPresent()) {
 			this.onUnknownEvent(json);
 			return;
 		}
+		if(event.isPresent()) {
+			this.onEvent(event.get());
+			event.get().dispatch(this);
+		}
 
-		ChannelCreator makeChannel = data -> {
-			if(data.has("channel")) {
-				final String id = data.getString("channel");
-				switch(id.isEmpty() ? '\0' : id.charAt(0)) {
-				case 'C':
-				case 'G':
-					return new TautChannel(conn, id);
-				case 'D':
-					if(data.has("user")) {
-						final TautUser user = new TautUser(conn, data.getString("user"));
-						return new TautDirectChannel(user);
-					}
-					break;
-				}
-			}
-			throw new TautException("Unable to construct channel");
-		};
-
-		//TODO Most if not all of the rest of these
-		switch(type) {
+		switch(lookup.get()) {
 		case message: {
-			final TautAbstractChannel channel = makeChannel.makeChannel(json);
-			final TautMessage message = new TautMessage(channel, json);
-			this.onMessage(message);
+			final TautAbstractChannel channel = TautEvent.resolveChannel(conn, json.optString("channel", ""), json.<String>getOpt("user"));
+			this.onMessage(new TautMessage(channel, json));
 			break; }
 		case reaction_added: {
-			final TautReaction reaction = new TautReaction(conn, json.getString("reaction"), 1, new TautUser(conn, json.getString("user")));
+			final TautReaction reaction = new TautReaction(conn, json.getString("reaction"), 1, conn.getUserById(json.getString("user")));
 
 			final JSONObject item = json.getJSONObject("item");
 			final String itemType = item.getString("type");
 			if(itemType.equals("message")) {
-				final TautAbstractChannel channel = makeChannel.makeChannel(item);
+				final TautAbstractChannel channel = TautEvent.resolveChannel(conn, item.getString("channel"), Optional.empty());
 				this.onMessageReactionAdded(channel.messageByTs(item.getString("ts")), reaction);
 			} else if(itemType.equals("file")) {
-				this.onFileReactionAdded(new TautFile(conn, item.getString("file")), reaction);
+				this.onFileReactionAdded(conn.getFileById(item.getString("file")), reaction);
 			} else if(itemType.equals("file_comment")) {
 				//TODO Not sure how to do this
 //				this.onFileCommentReactionAdded(new TautFileComment(new TautFile(conn, item.getString("file")), item.getString("file_comment")), reaction);
@@ -81,6 +95,9 @@ public interface TautEventListener {
 
 	default void onUnknownEvent(JSONObject json) {}
 
+	// Called after the RTM connection drops and comes back; events in 'gap' may have been missed
+	default void onConnectionGap(TautConnection conn, TautRTMConnection.Gap gap) {}
+
 	default void onMessage(TautMessage message) {}
 
 	default void onMessageReactionAdded(TautMessage message, TautReaction reaction) {}
@@ -88,4 +105,27 @@ public interface TautEventListener {
 	default void onFileReactionAdded(TautFile file, TautReaction reaction) {}
 
 	default void onFileCommentReactionAdded(TautFileComment comment, TautReaction reaction) {}
+
+	// Typed callbacks. Every event with a known type is decoded into a TautEvent and passed to onEvent() and to the callback for its class
+	default void onEvent(TautEvent event) {}
+	default void onSimpleEvent(TautEvent.Simple event) {}
+	default void onBotEvent(TautEvent.Bot event) {}
+	default void onChannelEvent(TautEvent.Channel event) {}
+	default void onChannelInfoEvent(TautEvent.ChannelInfo event) {}
+	default void onChannelMarked(TautEvent.ChannelMarked event) {}
+	default void onHistoryChanged(TautEvent.HistoryChanged event) {}
+	default void onDndUpdated(TautEvent.Dnd event) {}
+	default void onSettingChange(TautEvent.SettingChange event) {}
+	default void onEmojiChanged(TautEvent.EmojiChanged event) {}
+	default void onFileEvent(TautEvent.File event) {}
+	default void onFileCommentEvent(TautEvent.FileComment event) {}
+	default void onMessageEvent(TautEvent.Message event) {}
+	default void onPinEvent(TautEvent.Pin event) {}
+	default void onPresenceChange(TautEvent.Presence event) {}
+	default void onReactionEvent(TautEvent.Reaction event) {}
+	default void onReconnectUrl(TautEvent.ReconnectUrl event) {}
+	default void onStarEvent(TautEvent.Star event) {}
+	default void onSubteamEvent(TautEvent.Subteam event) {}
+	default void onUserEvent(TautEvent.User event) {}
+	default void onUserTyping(TautEvent.UserTyping event) {}
 }
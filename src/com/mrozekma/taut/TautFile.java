@@ -3,6 +3,7 @@ package com.mrozekma.taut;
 import org.json.JSONException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 // https://api.slack.com/types/file
@@ -33,7 +34,7 @@ public class TautFile extends LazyLoadedObject {
 	private TautChannel[] pinnedTo;
 	private Optional<TautFileComment> initialComment;
 
-	private Optional<TautFileComment[]> comments = Optional.empty();
+	private volatile Optional<TautFileComment[]> comments = Optional.empty();
 
 	private boolean editable;
 	// private boolean isExternal; // Seems superfluous given 'mode'
@@ -96,6 +97,10 @@ public class TautFile extends LazyLoadedObject {
 	public Map<Integer, String> getThumbs() throws TautException { this.checkLoad(); return this.thumbs; }
 	public TautReactionList getReactions() throws TautException { this.checkLoad(); return this.reactions; }
 
+	public CompletableFuture<TautFile> loadAsync() {
+		return this.checkLoadAsync().thenApply(v -> this);
+	}
+
 	public TautFileComment[] getComments() throws TautException {
 		this.checkLoad();
 		// Comments are loaded separately because they're not included in a files.list request, but they are in a files.info request
@@ -162,11 +167,11 @@ public class TautFile extends LazyLoadedObject {
 		this.numStars = json.optInt("num_stars", 0);
 		this.commentsCount = json.getInt("comments_count");
 
-		this.user = new TautUser(this.conn, json.getString("user"));
-		this.channels = json.<String>streamArray("channels").map(id -> new TautChannel(this.conn, id)).toArray(TautChannel[]::new);
-		this.groups = json.<String>streamArray("groups").map(id -> new TautChannel(this.conn, id)).toArray(TautChannel[]::new);
+		this.user = this.conn.getUserById(json.getString("user"));
+		this.channels = json.<String>streamArray("channels").map(this.conn::getChannelById).toArray(TautChannel[]::new);
+		this.groups = json.<String>streamArray("groups").map(this.conn::getChannelById).toArray(TautChannel[]::new);
 //		this.ims = json.<JSONObject>streamArray("ims").map(id -> new TautDirectMessage(this.conn, id)).toArray(TautDirectMessage[]::new);
-		this.pinnedTo = json.<String>streamArray("pinned_to").map(id -> new TautChannel(this.conn, id)).toArray(TautChannel[]::new);
+		this.pinnedTo = json.<String>streamArray("pinned_to").map(this.conn::getChannelById).toArray(TautChannel[]::new);
 		this.initialComment = json.has("initial_comment") ? Optional.of(new TautFileComment(this, json.getJSONObject("initial_comment"))) : Optional.empty();
 
 		this.editable = json.optBoolean("editable", false);
@@ -176,6 +181,9 @@ public class TautFile extends LazyLoadedObject {
 		this.displayAsBot = json.optBoolean("display_as_bot", false);
 		this.isStarred = json.optBoolean("is_starred", false);
 
+		// Fresh data (a reload after RTMCacheUpdater unloaded us for a file_comment_* event, or an update from a list call) means the comments may have changed too
+		this.comments = Optional.empty();
+
 		this.thumbs = new Map<>();
 		((Set<String>)json.keySet()).stream().filter(key -> key.startsWith("thumb_")).forEach(key -> {
 			// Ignoring other keys like thumb_360_gif and thumb_360_w for now
@@ -199,12 +207,14 @@ public class TautFile extends LazyLoadedObject {
 		req.put("comment", comment);
 		channel.ifPresent(c -> req.put("channel", c.getId()));
 		final JSONObject res = this.post("files.comments.add", req);
+		this.comments = Optional.empty();
 		return new TautFileComment(this, res.getJSONObject("comment"));
 	}
 
 	public void delete() throws TautException {
 		this.post("files.delete");
 		this.unload();
+		this.conn.fileCache.remove(this.getId());
 	}
 
 	public String share() throws TautException {
@@ -229,7 +239,15 @@ public class TautFile extends LazyLoadedObject {
 		}
 
 		final JSONObject res = conn.post("files.upload", req);
-		return new TautFile(conn, res.getJSONObject("file"));
+		return fromJSON(conn, res.getJSONObject("file"));
+	}
+
+	public static TautFile getById(TautConnection conn, String id) {
+		return conn.fileCache.get(id, i -> new TautFile(conn, i));
+	}
+
+	static TautFile fromJSON(TautConnection conn, JSONObject json) {
+		return conn.fileCache.update(json, j -> new TautFile(conn, j));
 	}
 
 	public static abstract class Subtype {}
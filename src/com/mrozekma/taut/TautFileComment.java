@@ -46,7 +46,7 @@ public class TautFileComment extends LazyLoadedObject {
 
 	@Override protected void populate(JSONObject json) {
 		this.created = json.getLong("created");
-		this.user = new TautUser(this.conn, json.getString("user"));
+		this.user = this.conn.getUserById(json.getString("user"));
 		this.comment = json.getString("comment");
 	}
 
@@ -67,7 +67,7 @@ public class TautHTTPSServer {
 			final String payload = nvps.get(0).getValue();
 			final JSONObject request;
 			try {
-				request = new JSONObject(payload);
+				request = TautJSONCodec.getDefault().parse(payload);
 			} catch(JSONException e) {
 				throw new IOException(e);
 			}
@@ -101,8 +101,8 @@ public class TautHTTPSServer {
 
 			public UserAction(TautConnection conn, JSONObject json) throws TautException {
 				this.callbackId = json.getString("callback_id");
-				this.channel = new TautChannel(conn, json.getJSONObject("channel").getString("id"));
-				this.user = new TautUser(conn, json.getJSONObject("user").getString("id"));
+				this.channel = conn.getChannelById(json.getJSONObject("channel").getString("id"));
+				this.user = conn.getUserById(json.getJSONObject("user").getString("id"));
 				this.message = this.channel.messageByTs(json.getString("message_ts"));
 				this.responseUrl = json.getString("response_url");
 
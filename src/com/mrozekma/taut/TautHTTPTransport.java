@@ -0,0 +1,177 @@
+package com.mrozekma.taut;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pooled keep-alive HTTP client used for Web API calls.
+// Every API call goes to the same host, so without pooling each one pays a fresh TCP+TLS handshake.
+// The settings can only be changed until the first request is made; after that the pool is fixed
+public class TautHTTPTransport implements Closeable {
+	private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "taut-http-evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static TautHTTPTransport defaultTransport;
+
+	private int maxConnections = 20;
+	private int maxConnectionsPerRoute = 10;
+	private int asyncThreads = 64;
+	private long idleTimeout = 30; // seconds
+	private long connectionTtl = 5 * 60; // seconds
+	private volatile String apiUrl = "https://slack.com/api/";
+
+	private Optional<PoolingHttpClientConnectionManager> pool = Optional.empty();
+	private Optional<CloseableHttpClient> client = Optional.empty();
+	private Optional<ScheduledFuture<?>> eviction = Optional.empty();
+	private Optional<ThreadPoolExecutor> executor = Optional.empty();
+	private boolean closed = false;
+
+	public int getMaxConnections() { return this.maxConnections; }
+	public int getMaxConnectionsPerRoute() { return this.maxConnectionsPerRoute; }
+	public int getAsyncThreads() { return this.asyncThreads; }
+	public long getIdleTimeout() { return this.idleTimeout; }
+	public long getConnectionTtl() { return this.connectionTtl; }
+	public String getApiUrl() { return this.apiUrl; }
+
+	public synchronized TautHTTPTransport setMaxConnections(int maxConnections) {
+		this.checkUnstarted();
+		this.maxConnections = maxConnections;
+		return this;
+	}
+
+	public synchronized TautHTTPTransport setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.checkUnstarted();
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		return this;
+	}
+
+	// Threads for asynchronous API calls. Deliberately more than the connection limit: an async call spends much of its time
+	// asleep in the rate limiter or waiting on an identical call already in flight, and holds no connection while it does
+	public synchronized TautHTTPTransport setAsyncThreads(int asyncThreads) {
+		this.checkUnstarted();
+		if(asyncThreads < 1) {
+			throw new IllegalArgumentException("Need at least one async thread");
+		}
+		this.asyncThreads = asyncThreads;
+		return this;
+	}
+
+	// Pooled connections idle for longer than this are closed. 0 disables idle eviction
+	public synchronized TautHTTPTransport setIdleTimeout(long seconds) {
+		this.checkUnstarted();
+		this.idleTimeout = seconds;
+		return this;
+	}
+
+	// Connections are never reused after this long, regardless of keep-alive. 0 means no limit
+	public synchronized TautHTTPTransport setConnectionTtl(long seconds) {
+		this.checkUnstarted();
+		this.connectionTtl = seconds;
+		return this;
+	}
+
+	// Base URL the route names are appended to. Mostly useful for pointing at a TautMockServer
+	public TautHTTPTransport setApiUrl(String apiUrl) {
+		this.apiUrl = apiUrl.endsWith("/") ? apiUrl : apiUrl + "/";
+		return this;
+	}
+
+	private void checkUnstarted() {
+		if(this.client.isPresent() || this.executor.isPresent() || this.closed) {
+			throw new IllegalStateException("Transport already in use");
+		}
+	}
+
+	private synchronized CloseableHttpClient getClient() throws TautException {
+		if(this.closed) {
+			throw new TautException("HTTP transport closed");
+		}
+		if(!this.client.isPresent()) {
+			final PoolingHttpClientConnectionManager pool = (this.connectionTtl > 0)
+					? new PoolingHttpClientConnectionManager(this.connectionTtl, TimeUnit.SECONDS)
+					: new PoolingHttpClientConnectionManager();
+			pool.setMaxTotal(this.maxConnections);
+			pool.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+			this.pool = Optional.of(pool);
+			this.client = Optional.of(HttpClients.custom().setConnectionManager(pool).build());
+			if(this.idleTimeout > 0) {
+				final long period = Math.max(1, this.idleTimeout / 2);
+				this.eviction = Optional.of(evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.SECONDS));
+			}
+		}
+		return this.client.get();
+	}
+
+	private void evict() {
+		this.pool.ifPresent(pool -> {
+			pool.closeExpiredConnections();
+			pool.closeIdleConnections(this.idleTimeout, TimeUnit.SECONDS);
+		});
+	}
+
+	// Runs asynchronous API calls, unless the connection has its own (see TautConnection.setAsyncExecutor()).
+	// Sized by setAsyncThreads(); idle threads exit after a minute
+	synchronized Executor getExecutor() throws TautException {
+		if(this.closed) {
+			throw new TautException("HTTP transport closed");
+		}
+		if(!this.executor.isPresent()) {
+			final AtomicInteger threadId = new AtomicInteger();
+			final ThreadPoolExecutor executor = new ThreadPoolExecutor(this.asyncThreads, this.asyncThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+				final Thread thread = new Thread(r, "taut-http-" + threadId.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.allowCoreThreadTimeOut(true);
+			this.executor = Optional.of(executor);
+		}
+		return this.executor.get();
+	}
+
+	// The caller must close the response (which returns the connection to the pool)
+	CloseableHttpResponse execute(HttpUriRequest request) throws TautException {
+		try {
+			return this.getClient().execute(request);
+		} catch(IOException e) {
+			throw new TautException(e);
+		}
+	}
+
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override public synchronized void close() throws IOException {
+		if(this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.eviction.ifPresent(eviction -> eviction.cancel(false));
+		this.eviction = Optional.empty();
+		this.executor.ifPresent(ExecutorService::shutdown);
+		this.executor = Optional.empty();
+		if(this.client.isPresent()) {
+			this.client.get().close();
+			this.client = Optional.empty();
+			this.pool = Optional.empty();
+		}
+	}
+
+	// Shared transport for calls that aren't tied to a connection (e.g. oauth.access). Never closed
+	static synchronized TautHTTPTransport getDefault() {
+		if(defaultTransport == null) {
+			defaultTransport = new TautHTTPTransport();
+		}
+		return defaultTransport;
+	}
+}
@@ -0,0 +1,61 @@
+package com.mrozekma.taut;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.function.Consumer;
+
+// Parses and serializes the JSON exchanged with Slack (API responses, RTM frames, interactive message payloads).
+// Whatever the backend, parsed documents are built from our JSONObject/JSONArray so the rest of the library doesn't care which one is in use.
+// The default is the first codec registered with ServiceLoader (META-INF/services/com.mrozekma.taut.TautJSONCodec), or ORG_JSON if there isn't one;
+// setDefault() overrides it
+public interface TautJSONCodec {
+	// org.json's own parser and serializer; the most lenient
+	TautJSONCodec ORG_JSON = new OrgJSONCodec();
+	// A strict RFC 8259 parser and serializer that's considerably faster than org.json's
+	TautJSONCodec FAST = new FastJSONCodec();
+
+	JSONObject parse(Reader reader) throws JSONException;
+
+	default JSONObject parse(String text) throws JSONException {
+		return this.parse(new StringReader(text));
+	}
+
+	// Like parse(), except each element of the array under 'arrayKey' is passed to 'fn' as it's read instead of being stored in the result
+	<T> JSONObject parseStreaming(Reader reader, String arrayKey, Consumer<T> fn) throws JSONException;
+
+	void write(JSONObject json, Writer writer) throws IOException;
+
+	default String toString(JSONObject json) {
+		final StringWriter writer = new StringWriter();
+		try {
+			this.write(json, writer);
+		} catch(IOException e) {
+			throw new JSONException(e);
+		}
+		return writer.toString();
+	}
+
+	static TautJSONCodec getDefault() {
+		return CodecHolder.codec;
+	}
+
+	static void setDefault(TautJSONCodec codec) {
+		CodecHolder.codec = codec;
+	}
+}
+
+class CodecHolder {
+	static volatile TautJSONCodec codec = load();
+
+	private static TautJSONCodec load() {
+		final Iterator<TautJSONCodec> iter = ServiceLoader.load(TautJSONCodec.class).iterator();
+		return iter.hasNext() ? iter.next() : TautJSONCodec.ORG_JSON;
+	}
+}
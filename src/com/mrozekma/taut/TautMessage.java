@@ -3,6 +3,7 @@ package com.mrozekma.taut;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 //TODO Message subtypes: https://api.slack.com/events/message
 public class TautMessage {
@@ -55,9 +56,9 @@ public class TautMessage {
 		{
 			final Optional<TautUser> user;
 			if(json.has("user")) {
-				user = Optional.of(new TautUser(this.conn, json.getString("user")));
+				user = Optional.of(this.conn.getUserById(json.getString("user")));
 			} else if(json.has("bot_id")) {
-				user = Optional.of(new TautUser(this.conn, json.getString("bot_id")));
+				user = Optional.of(this.conn.getUserById(json.getString("bot_id")));
 			} else {
 				user = Optional.empty();
 			}
@@ -65,14 +66,14 @@ public class TautMessage {
 		}
 		if(json.has("edited")) {
 			final JSONObject edited = json.getJSONObject("edited");
-			this.edited = Optional.of(new WhoWhen(edited.getOpt("user", (String user) -> new TautUser(this.conn, user)), edited.getString("ts")));
+			this.edited = Optional.of(new WhoWhen(edited.getOpt("user", (String user) -> this.conn.getUserById(user)), edited.getString("ts")));
 		} else {
 			this.edited = Optional.empty();
 		}
 		this.attachments = json.<JSONObject>streamArray("attachments").map(attachment -> new TautAttachment(this.conn, attachment)).toArray(TautAttachment[]::new);
 
 		this.starred = json.optBoolean("is_starred", false);
-		this.pins = json.has("pinned_to") ? json.getJSONArray("pinned_to").<String>stream().map(id -> new TautChannel(this.conn, id)).toArray(TautChannel[]::new) : new TautChannel[0];
+		this.pins = json.has("pinned_to") ? json.getJSONArray("pinned_to").<String>stream().map(this.conn::getChannelById).toArray(TautChannel[]::new) : new TautChannel[0];
 
 		this.reactions = new TautMessageReactionList(this);
 	}
@@ -86,6 +87,16 @@ public class TautMessage {
 	public TautChannel[] getPins() { return this.pins; }
 	public TautReactionList getReactions() { return this.reactions; }
 
+	// Reads this message back from the channel history. Messages returned by sendMessage() and update() are built from what the API
+	// sent back, which can be missing fields the server fills in later (like unfurled attachments); this is the way to get them
+	public TautMessage refetch() throws TautException {
+		return this.channel.messageByTs(this.current.getTs());
+	}
+
+	public CompletableFuture<TautMessage> refetchAsync() {
+		return this.channel.messageByTsAsync(this.current.getTs());
+	}
+
 	public void delete() throws TautException {
 		this.delete(true);
 	}
@@ -110,13 +121,37 @@ public class TautMessage {
 				.put("attachments", Arrays.stream(newMessage.getAttachments()).map(TautAttachment::toJSON).toArray(JSONObject[]::new))
 				;
 		final JSONObject res = this.getChannel().post("chat.update", args);
-		return this.channel.messageByTs(res.getString("ts"));
+		// Build the result from the response rather than reading the message back from the history. Newer responses include the message;
+		// otherwise everything but the text and attachments carries over. The response doesn't say when the edit happened, so 'edited' isn't updated
+		final JSONObject message = res.optJSONObject("message");
+		if(message != null) {
+			if(!message.has("ts")) {
+				message.put("ts", res.getString("ts"));
+			}
+			return new TautMessage(this.channel, message);
+		}
+		return new TautMessage(this.channel, res.optString("text", newMessage.getText()), this.current, this.edited, newMessage.getAttachments(), this.starred, this.pins);
 	}
 
 	public TautMessage update(String newText) throws TautException {
 		return this.update(new TautMessageDraft(newText));
 	}
 
+	public CompletableFuture<TautMessage> updateAsync(TautMessageDraft newMessage) {
+		return this.conn.async(() -> this.update(newMessage));
+	}
+
+	public CompletableFuture<TautMessage> updateAsync(String newText) {
+		return this.updateAsync(new TautMessageDraft(newText));
+	}
+
+	public CompletableFuture<Void> deleteAsync() {
+		return this.conn.async(() -> {
+			this.delete();
+			return null;
+		});
+	}
+
 	public void addReaction(String name) throws TautException {
 		this.getReactions().add(name);
 	}
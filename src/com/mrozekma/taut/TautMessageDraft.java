@@ -99,6 +99,27 @@ public class TautMessageDraft {
 		return this;
 	}
 
+	// Whether this draft can go over RTM, which only carries the text: no attachments, no custom sender, and no server-side formatting.
+	// RTM messages are always posted as the authed user with Slack's default unfurling, so the draft has to ask for exactly that.
+	// Already-escaped mentions like <@U123> are fine, but bare @names and #channels would only be linked by chat.postMessage
+	boolean canSendOverRTM() {
+		if(this.attachments.length > 0 || this.username.isPresent() || this.iconUrl.isPresent() || this.iconEmoji.isPresent() || this.parse) {
+			return false;
+		}
+		if(!this.asUser || this.unfurlLinks || !this.unfurlMedia) {
+			return false;
+		}
+		if(this.linkNames) {
+			for(int i = 0; i < this.text.length(); i++) {
+				final char c = this.text.charAt(i);
+				if((c == '@' || c == '#') && (i == 0 || this.text.charAt(i - 1) != '<')) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	// This interface is possibly terrible. Shrug
 	public static void setDefaultSender(String username, String icon) {
 		defaultUsername = Optional.of(username);
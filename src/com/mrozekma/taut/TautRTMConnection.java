@@ -1,51 +1,95 @@
 package com.mrozekma.taut;
 
 import org.glassfish.tyrus.client.ClientManager;
+import org.json.JSONException;
 
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TautRTMConnection implements MessageHandler.Whole<String> {
-	private class Watchdog extends TimerTask {
+	// All watchdogs share one scheduler thread instead of each connection owning a Timer. The ticks themselves only send a ping;
+	// reconnects, which make HTTP calls, are handed off to the connection's HTTP pool so one slow workspace doesn't hold up the rest
+	private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "taut-rtm-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private class Watchdog {
 		static final int PING_PERIOD = 20; // seconds
 
-		private Optional<Timer> timer = Optional.empty();
-		private int lastPingId = 0, lastPongId = 0;
+		private Optional<ScheduledFuture<?>> task = Optional.empty();
+		private volatile int lastPingId = 0, lastPongId = 0;
+		private volatile long lastPingSent = 0; // nanoTime
+
+		private volatile long lastRtt = -1; // nanoseconds
+		private final AtomicLong totalRtt = new AtomicLong(), maxRtt = new AtomicLong(), pongs = new AtomicLong();
+
+		public synchronized void start() {
+			this.task.ifPresent(task -> task.cancel(false));
+			// Spread the first tick over the period so many connections started together don't all ping at once
+			final long initialDelay = TimeUnit.SECONDS.toMillis(PING_PERIOD) + ThreadLocalRandom.current().nextLong(TimeUnit.SECONDS.toMillis(PING_PERIOD));
+			this.task = Optional.of(scheduler.scheduleAtFixedRate(this::run, initialDelay, TimeUnit.SECONDS.toMillis(PING_PERIOD), TimeUnit.MILLISECONDS));
+		}
+
+		public synchronized void stop() {
+			this.task.ifPresent(task -> task.cancel(false));
+			this.task = Optional.empty();
+		}
 
-		public void start() {
-			this.timer.ifPresent(timer -> timer.cancel());
-			this.timer = Optional.of(new Timer());
-			this.timer.get().scheduleAtFixedRate(this, PING_PERIOD * 1000, PING_PERIOD * 1000);
+		private synchronized boolean isRunning() {
+			return this.task.isPresent();
 		}
 
-		public void stop() {
-			if(this.timer.isPresent()) {
-				this.timer.get().cancel();
-				this.timer = Optional.empty();
+		// Runs a reconnect attempt after 'delay' milliseconds. The caller has already set 'reconnectPending'
+		public void scheduleReconnect(long delay) {
+			if(!this.isRunning()) {
+				TautRTMConnection.this.reconnectPending.set(false);
+				return;
 			}
+			scheduler.schedule(() -> {
+				try {
+					// Same executor as the connection's other asynchronous calls
+					TautRTMConnection.this.conn.getAsyncExecutor().execute(TautRTMConnection.this::reconnect);
+				} catch(TautException | RejectedExecutionException e) {
+					// The transport or executor is shut down; there's nothing to reconnect with
+					TautRTMConnection.this.reconnectPending.set(false);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
 		}
 
-		@Override public void run() {
+		private void run() {
+			// Anything escaping from here would cancel the scheduled task, and with it any chance of reconnecting
 			try {
+				if(TautRTMConnection.this.reconnectPending.get()) {
+					return;
+				}
 				if(!TautRTMConnection.this.isConnected() || this.lastPingId != this.lastPongId) {
 					this.lastPingId = this.lastPongId = 0;
-					TautRTMConnection.this.connect();
+					TautRTMConnection.this.requestReconnect();
 					return;
 				}
 
 				try {
 					this.sendPing();
 				} catch(TautException e) {
-					TautRTMConnection.this.connect();
+					TautRTMConnection.this.requestReconnect();
+				}
+			} catch(RuntimeException e) {
+				if(TautConnection.VERBOSE) {
+					System.out.format("[RTM] Watchdog error: %s\n", e.getMessage());
 				}
-			} catch(TautException e) {
-				throw new RuntimeException(e);
 			}
 		}
 
 		public void sendPing() throws TautException {
+			this.lastPingSent = System.nanoTime();
 			this.lastPingId = TautRTMConnection.this.sendMessage(new JSONObject().put("type", "ping"));
 		}
 
@@ -53,23 +97,120 @@ public class TautRTMConnection implements MessageHandler.Whole<String> {
 			if(!message.optString("type", "").equals("pong")) {
 				throw new TautException("Invalid pong message");
 			}
-			this.lastPongId = message.getInt("reply_to");
+			final int replyTo = message.getInt("reply_to");
+			if(replyTo == this.lastPingId && replyTo != this.lastPongId) {
+				final long rtt = System.nanoTime() - this.lastPingSent;
+				this.lastRtt = rtt;
+				this.totalRtt.addAndGet(rtt);
+				this.maxRtt.accumulateAndGet(rtt, Math::max);
+				this.pongs.incrementAndGet();
+			}
+			this.lastPongId = replyTo;
+		}
+	}
+
+	// A window during which the connection was down and events may have been missed.
+	// Messages posted in this window can be backfilled from channel history using 'start' as the oldest timestamp
+	public static class Gap {
+		private final Date start, end;
+
+		Gap(Date start, Date end) {
+			this.start = start;
+			this.end = end;
 		}
+
+		public Date getStart() { return this.start; }
+		public Date getEnd() { return this.end; }
+		public long getDurationMillis() { return this.end.getTime() - this.start.getTime(); }
+
+		@Override public String toString() {
+			return String.format("Gap(%s - %s)", this.start, this.end);
+		}
+	}
+
+	public enum State {
+		connected,
+		reconnecting, // Dropped and waiting on a reconnect attempt
+		disconnected, // Closed by disconnect(), or not yet connected
 	}
 
+	// Listeners that override the two-argument TautEventListener.fire() expect to be called through it, and decode the event themselves if they want it
+	private static final ClassValue<Boolean> overridesRawFire = new ClassValue<Boolean>() {
+		@Override protected Boolean computeValue(Class<?> type) {
+			try {
+				return type.getMethod("fire", TautConnection.class, JSONObject.class).getDeclaringClass() != TautEventListener.class;
+			} catch(NoSuchMethodException e) {
+				return false;
+			}
+		}
+	};
+
+	static final long MIN_BACKOFF = 1000, MAX_BACKOFF = 5 * 60 * 1000; // milliseconds
+	static final long REPLY_TIMEOUT = 30; // seconds
+
 	private final TautConnection conn;
-	private final ClientManager cm = ClientManager.createClient();
+	private final ClientManager cm;
 	private final Watchdog watchdog = new Watchdog();
-	private final List<TautEventListener> listeners = new LinkedList<>();
+	private final List<TautEventListener> listeners = new CopyOnWriteArrayList<>();
+	private final TautEventListener cacheUpdater = new RTMCacheUpdater();
+	private volatile TautEventDispatcher dispatcher;
+	private final boolean ownsDispatcher; // Made for this connection by TautConnection.rtmStart(), so shut down by disconnect()
+	private final AtomicLong receivedEvents = new AtomicLong(), skippedEvents = new AtomicLong();
 
-	private Optional<Session> session = Optional.empty();
-	private int nextMessageId = 1;
+	private volatile Optional<Session> session = Optional.empty();
+	private final AtomicInteger nextMessageId = new AtomicInteger(1);
+	// Messages sent with request() that Slack hasn't replied to yet, by ID
+	private final java.util.Map<Integer, CompletableFuture<JSONObject>> pendingReplies = new ConcurrentHashMap<>();
 
-	TautRTMConnection(TautConnection conn) throws TautException {
-		this.conn = conn;
+	// Reconnect state. 'reconnectUrl' comes from the most recent reconnect_url event and lets us reconnect without calling the API at all
+	private volatile Optional<String> reconnectUrl = Optional.empty();
+	// Set from when a reconnect is requested until the new session is open, so only one reconnect is ever in flight
+	private final AtomicBoolean reconnectPending = new AtomicBoolean();
+	private volatile boolean closed = false;
+	private volatile long lastReceived = System.currentTimeMillis();
+	private int failedReconnects = 0;
+	private final AtomicLong reconnects = new AtomicLong();
+	private volatile Optional<Gap> lastGap = Optional.empty();
+
+	private final boolean offline; // Fed frames by a TautRTMReplay instead of a socket
+	private volatile Optional<TautRTMRecorder> recorder = Optional.empty();
+
+	TautRTMConnection(TautConnection conn, TautEventDispatcher dispatcher) throws TautException {
+		this(conn, dispatcher, ClientManager.createClient());
+	}
+
+	// 'cm' can be shared between RTM connections (see TautRTMManager)
+	TautRTMConnection(TautConnection conn, TautEventDispatcher dispatcher, ClientManager cm) throws TautException {
+		this(conn, dispatcher, cm, false);
+	}
 
+	TautRTMConnection(TautConnection conn, TautEventDispatcher dispatcher, ClientManager cm, boolean ownsDispatcher) throws TautException {
+		this(conn, dispatcher, cm, ownsDispatcher, false);
 		this.connect();
-		this.watchdog.start();
+	}
+
+	private TautRTMConnection(TautConnection conn, TautEventDispatcher dispatcher, ClientManager cm, boolean ownsDispatcher, boolean offline) {
+		this.conn = conn;
+		this.dispatcher = dispatcher;
+		this.ownsDispatcher = ownsDispatcher;
+		this.cm = cm;
+		this.offline = offline;
+		this.closed = offline;
+	}
+
+	// A connection that never opens a socket; frames are passed to onMessage() directly
+	static TautRTMConnection offline(TautConnection conn, TautEventDispatcher dispatcher) {
+		return new TautRTMConnection(conn, dispatcher, null, false, true);
+	}
+
+	// Appends every frame received from now on to 'recorder', for replaying later with TautRTMReplay.
+	// The recorder isn't closed when recording stops
+	public void startRecording(TautRTMRecorder recorder) {
+		this.recorder = Optional.of(recorder);
+	}
+
+	public void stopRecording() {
+		this.recorder = Optional.empty();
 	}
 
 	public void addListener(TautEventListener listener) {
@@ -80,72 +221,457 @@ public class TautRTMConnection implements MessageHandler.Whole<String> {
 		this.listeners.remove(listener);
 	}
 
+	public TautEventDispatcher getDispatcher() {
+		return this.dispatcher;
+	}
+
+	public TautConnection getConnection() {
+		return this.conn;
+	}
+
+	public State getState() {
+		if(this.closed) {
+			return State.disconnected;
+		}
+		return (this.isConnected() && !this.reconnectPending.get()) ? State.connected : State.reconnecting;
+	}
+
 	private String getUrl() throws TautException {
 		final JSONObject res = this.conn.post("rtm.start", new JSONObject().put("simple_latest", true).put("no_unreads", true));
+		// rtm.start returns the whole workspace, so use it to fill the caches instead of loading each object later
+		try {
+			this.conn.hydrate(res);
+			this.conn.updateSnapshot(res);
+		} catch(JSONException | TautException e) {
+			// Not fatal; anything that didn't make it into the cache will be loaded on demand
+			if(TautConnection.VERBOSE) {
+				System.out.format("[Rx RTM] Unable to update cache: %s\n", e.getMessage());
+			}
+		}
 		return res.getString("url");
 	}
 
+	// rtm.connect only returns the websocket URL, not the whole workspace. The caches are kept current by events, so reconnects don't need rtm.start
+	private String getConnectUrl() throws TautException {
+		return this.conn.post("rtm.connect", new JSONObject()).getString("url");
+	}
+
 	public boolean isConnected() {
 		return this.session.map(Session::isOpen).orElse(false);
 	}
 
-	public void connect() throws TautException {
+	// Opens a new session using rtm.start, refilling the caches
+	public synchronized void connect() throws TautException {
+		if(this.offline) {
+			throw new TautException("Offline RTM connection");
+		}
+		this.closed = false;
+		if(this.ownsDispatcher && this.dispatcher.isShutdown()) {
+			// Reconnecting after disconnect()
+			this.dispatcher = new TautEventDispatcher();
+		}
+		this.closeSession();
+		this.openSession(this.getUrl());
+		this.reconnectPending.set(false);
+		if(!this.watchdog.isRunning()) {
+			this.watchdog.start();
+		}
+	}
+
+	// Closes the socket and stops reconnecting. If the dispatcher was made for this connection it's shut down too, after handling whatever is already queued
+	public synchronized void disconnect() throws TautException {
+		this.closed = true;
+		this.watchdog.stop();
+		try {
+			this.closeSession();
+		} finally {
+			this.session = Optional.empty();
+			if(this.ownsDispatcher) {
+				this.dispatcher.shutdown();
+			}
+		}
+	}
+
+	private void closeSession() throws TautException {
 		if(this.session.isPresent()) {
+			final Session session = this.session.get();
+			this.session = Optional.empty();
+			// Replies never come over a different session
+			this.failPendingReplies(new TautException("RTM connection closed before Slack replied"));
 			try {
-				session.get().close();
+				session.close();
 			} catch(IOException e) {
 				throw new TautException(e);
 			}
 		}
+	}
 
+	private void openSession(String url) throws TautException {
 		try {
 			this.session = Optional.of(this.cm.connectToServer(new Endpoint() {
 				@Override public void onOpen(Session session, EndpointConfig endpointConfig) {
 					session.addMessageHandler(TautRTMConnection.this);
 				}
-			}, URI.create(this.getUrl())));
+
+				@Override public void onClose(Session session, CloseReason closeReason) {
+					TautRTMConnection.this.onSessionClosed(session);
+				}
+			}, URI.create(url)));
+			this.lastReceived = System.currentTimeMillis();
 		} catch(DeploymentException | IOException e) {
 			throw new TautException(e);
 		}
 	}
 
+	// Don't wait for the next ping to notice the server hung up on us
+	private void onSessionClosed(Session session) {
+		if(!this.closed && this.session.map(s -> s == session).orElse(false)) {
+			this.requestReconnect();
+		}
+	}
+
+	private void requestReconnect() {
+		if(this.reconnectPending.compareAndSet(false, true)) {
+			this.watchdog.scheduleReconnect(0);
+		}
+	}
+
+	// Tries the last reconnect_url first, then rtm.connect. On failure another attempt is scheduled with jittered exponential backoff,
+	// so a Slack outage doesn't turn into every client hammering the API in lockstep. Never throws
+	// Only called by whoever set 'reconnectPending', which is cleared once the new session is open
+	synchronized void reconnect() {
+		if(this.closed) {
+			this.reconnectPending.set(false);
+			return;
+		}
+		final Date gapStart = new Date(this.lastReceived);
+		try {
+			try {
+				this.closeSession();
+			} catch(TautException e) {
+				// The old session is being abandoned anyway
+			}
+
+			final Optional<String> url = this.reconnectUrl;
+			this.reconnectUrl = Optional.empty();
+			if(url.isPresent()) {
+				try {
+					this.openSession(url.get());
+				} catch(TautException e) {
+					// reconnect_url is only good for a short time
+					this.openSession(this.getConnectUrl());
+				}
+			} else {
+				this.openSession(this.getConnectUrl());
+			}
+		} catch(TautException | RuntimeException e) {
+			final long delay = getBackoff(this.failedReconnects++);
+			if(TautConnection.VERBOSE) {
+				System.out.format("[RTM] Reconnect failed (%s); retrying in %d ms\n", e.getMessage(), delay);
+			}
+			this.watchdog.scheduleReconnect(delay);
+			return;
+		}
+
+		this.failedReconnects = 0;
+		this.reconnectPending.set(false);
+		this.reconnects.incrementAndGet();
+		final Gap gap = new Gap(gapStart, new Date());
+		this.lastGap = Optional.of(gap);
+		for(TautEventListener listener : this.listeners) {
+			this.dispatcher.dispatch(Optional.empty(), () -> listener.onConnectionGap(this.conn, gap));
+		}
+	}
+
+	// Full jitter: somewhere between half and all of the capped exponential delay
+	static long getBackoff(int attempt) {
+		final long cap = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(attempt, 20));
+		return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+	}
+
+	public long getReconnectCount() {
+		return this.reconnects.get();
+	}
+
+	// Round trip time of the most recent ping, or -1 if no pong has come back yet
+	public long getPingRttMillis() {
+		final long rtt = this.watchdog.lastRtt;
+		return (rtt < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(rtt);
+	}
+
+	public long getMaxPingRttMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.watchdog.maxRtt.get());
+	}
+
+	public double getAveragePingRttMillis() {
+		final long pongs = this.watchdog.pongs.get();
+		return (pongs == 0) ? 0 : this.watchdog.totalRtt.get() / 1e6 / pongs;
+	}
+
+	// The most recent window during which events may have been missed
+	public Optional<Gap> getLastGap() {
+		return this.lastGap;
+	}
+
 	@Override public void onMessage(String s) {
+		if(TautConnection.VERBOSE) {
+			System.out.format("[Rx RTM] %s\n", s);
+		}
+		if(this.recorder.isPresent()) {
+			try {
+				this.recorder.get().record(System.currentTimeMillis(), s);
+			} catch(TautException e) {
+				// Don't let a full disk take down the connection
+				this.recorder = Optional.empty();
+				if(TautConnection.VERBOSE) {
+					System.out.format("[Rx RTM] Recording stopped: %s\n", e.getMessage());
+				}
+			}
+		}
+
+		// Only the type is decoded up front. The rest of the frame is only parsed if something is listening for that type
+		this.lastReceived = System.currentTimeMillis();
+		this.receivedEvents.incrementAndGet();
+		final Optional<String> typeName = peekType(s);
+		final TautJSONCodec codec = TautJSONCodec.getDefault();
 		try {
-			this.receiveMessage(new JSONObject(s));
-		} catch(TautException e) {
+			if(typeName.isPresent() && typeName.get().equals("reconnect_url")) {
+				// Needed by reconnect() whether or not any listener cares
+				final JSONObject json = codec.parse(s);
+				this.reconnectUrl = Optional.of(json.getString("url"));
+			}
+			if(!typeName.isPresent() && !this.pendingReplies.isEmpty()) {
+				// Replies to our messages don't have a type. They aren't events, so listeners don't see them
+				final JSONObject json = codec.parse(s);
+				if(json.has("reply_to")) {
+					this.receiveReply(json);
+					return;
+				}
+			}
+			if(typeName.isPresent() && typeName.get().equals("pong")) {
+				// Pongs are handled here so the watchdog hears about them even if the listeners are backed up
+				this.watchdog.receivePong(codec.parse(s));
+				return;
+			}
+
+			final Optional<TautEventListener.EventType> type = typeName.flatMap(TautEventListener.EventType::lookup);
+			final List<TautEventListener> listeners = new ArrayList<>();
+			// Update the cache first so listeners see the new data
+			if(this.cacheUpdater.isSubscribed(type)) {
+				listeners.add(this.cacheUpdater);
+			}
+			for(TautEventListener listener : this.listeners) {
+				if(listener.isSubscribed(type)) {
+					listeners.add(listener);
+				}
+			}
+			if(listeners.isEmpty()) {
+				this.skippedEvents.incrementAndGet();
+				return;
+			}
+
+			this.receiveMessage(codec.parse(s), type, listeners);
+		} catch(TautException | JSONException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private void receiveMessage(JSONObject json) throws TautException {
-		if(TautConnection.VERBOSE) {
-			System.out.format("[Rx RTM] %s\n", json);
+	private void receiveMessage(JSONObject json, Optional<TautEventListener.EventType> type, List<TautEventListener> listeners) {
+		this.dispatcher.dispatch(getChannelId(json), () -> {
+			try {
+				// Decoded once here and shared, rather than by each listener. The cache updater works from the JSON, so it alone doesn't need it
+				final boolean needEvent = type.isPresent() && listeners.stream().anyMatch(listener -> listener != this.cacheUpdater);
+				final Optional<TautEvent> event = needEvent ? TautEvent.decode(this.conn, type.get(), json) : Optional.empty();
+				for(TautEventListener listener : listeners) {
+					if(overridesRawFire.get(listener.getClass())) {
+						listener.fire(this.conn, json);
+					} else {
+						listener.fire(this.conn, json, event);
+					}
+				}
+			} catch(TautException e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+	// Number of frames received, including pongs and skipped events
+	public long getReceivedEventCount() {
+		return this.receivedEvents.get();
+	}
+
+	// Number of events dropped without being decoded because no listener was subscribed to their type
+	public long getSkippedEventCount() {
+		return this.skippedEvents.get();
+	}
+
+	// Finds the top-level "type" field in a raw frame without parsing the rest of it
+	static Optional<String> peekType(String frame) {
+		int depth = 0;
+		final int len = frame.length();
+		for(int i = 0; i < len; i++) {
+			switch(frame.charAt(i)) {
+			case '{':
+			case '[':
+				depth++;
+				break;
+			case '}':
+			case ']':
+				depth--;
+				break;
+			case '"': {
+				final int end = findStringEnd(frame, i);
+				if(end < 0) {
+					return Optional.empty();
+				}
+				if(depth == 1 && end == i + 5 && frame.startsWith("type", i + 1)) {
+					int j = skipWhitespace(frame, end + 1);
+					if(j < len && frame.charAt(j) == ':') {
+						j = skipWhitespace(frame, j + 1);
+						if(j < len && frame.charAt(j) == '"') {
+							final int valueEnd = findStringEnd(frame, j);
+							return (valueEnd < 0) ? Optional.empty() : Optional.of(frame.substring(j + 1, valueEnd));
+						}
+						return Optional.empty();
+					}
+				}
+				i = end;
+				break; }
+			}
+		}
+		return Optional.empty();
+	}
+
+	// Index of the quote closing the string that opens at 'start', or -1
+	private static int findStringEnd(String frame, int start) {
+		for(int i = start + 1; i < frame.length(); i++) {
+			switch(frame.charAt(i)) {
+			case '\\':
+				i++;
+				break;
+			case '"':
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int skipWhitespace(String frame, int i) {
+		while(i < frame.length() && Character.isWhitespace(frame.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	// The channel an event is about, used to keep each channel's events in order when dispatching in parallel
+	static Optional<String> getChannelId(JSONObject json) {
+		if(json.has("channel")) {
+			final Object channel = json.get("channel");
+			if(channel instanceof String) {
+				return Optional.of((String)channel);
+			} else if(channel instanceof JSONObject) {
+				return Optional.of(((JSONObject)channel).optString("id", ""));
+			}
+		}
+		if(json.has("channel_id")) {
+			return Optional.of(json.getString("channel_id"));
+		}
+		if(json.has("item")) {
+			// reaction_*, star_*
+			final JSONObject item = json.getJSONObject("item");
+			if(item.has("channel")) {
+				return Optional.of(item.getString("channel"));
+			}
+		}
+		return Optional.empty();
+	}
+
+	// Posts 'text' to 'channel' over the socket, skipping chat.postMessage. The future completes with the new message's timestamp once Slack acknowledges it.
+	// Only plain text can be sent this way (see TautAbstractChannel.sendMessageAsync(TautRTMConnection, TautMessageDraft)).
+	// Slack disconnects clients that send more than about one message per second
+	public CompletableFuture<String> sendMessage(TautAbstractChannel channel, String text) {
+		return this.postMessage(channel, text).thenApply(reply -> reply.getString("ts"));
+	}
+
+	// Like sendMessage(), but completes with Slack's whole acknowledgement, which includes the text as Slack stored it
+	CompletableFuture<JSONObject> postMessage(TautAbstractChannel channel, String text) {
+		return this.request(new JSONObject().put("type", "message").put("channel", channel.getId()).put("text", text));
+	}
+
+	// Sends 'json' and returns a future for Slack's reply to it. Fails if there's no reply within REPLY_TIMEOUT seconds or the session closes first
+	private CompletableFuture<JSONObject> request(JSONObject json) {
+		final int id = this.nextMessageId.getAndIncrement();
+		final CompletableFuture<JSONObject> rtn = new CompletableFuture<>();
+		this.pendingReplies.put(id, rtn);
+		final ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+			if(this.pendingReplies.remove(id, rtn)) {
+				rtn.completeExceptionally(new TautException(String.format("No reply to RTM message %d", id)));
+			}
+		}, REPLY_TIMEOUT, TimeUnit.SECONDS);
+		rtn.whenComplete((reply, e) -> timeout.cancel(false));
+
+		try {
+			this.send(id, json);
+		} catch(TautException e) {
+			this.pendingReplies.remove(id);
+			rtn.completeExceptionally(e);
+		}
+		return rtn;
+	}
+
+	private void receiveReply(JSONObject json) {
+		final CompletableFuture<JSONObject> future = this.pendingReplies.remove(json.getInt("reply_to"));
+		if(future == null) {
+			return;
 		}
-		//TODO Rx types
-		if(json.optString("type", "").equals("pong")) {
-			this.watchdog.receivePong(json);
+		if(json.optBoolean("ok", false)) {
+			future.complete(json);
 		} else {
-			for(TautEventListener listener : this.listeners) {
-				listener.fire(this.conn, json);
+			final JSONObject error = json.optJSONObject("error");
+			future.completeExceptionally(new TautException((error == null) ? "RTM request failed" : error.optString("msg", "RTM request failed")));
+		}
+	}
+
+	private void failPendingReplies(TautException e) {
+		for(Integer id : this.pendingReplies.keySet()) {
+			final CompletableFuture<JSONObject> future = this.pendingReplies.remove(id);
+			if(future != null) {
+				future.completeExceptionally(e);
 			}
 		}
 	}
 
 	private int sendMessage(JSONObject json) throws TautException {
-		if(!this.session.isPresent()) {
-			this.connect();
+		final int id = this.nextMessageId.getAndIncrement();
+		this.send(id, json);
+		return id;
+	}
+
+	private void send(int id, JSONObject json) throws TautException {
+		final Optional<Session> current = this.session;
+		if(!current.isPresent()) {
+			if(this.closed) {
+				throw new TautException("RTM connection closed");
+			}
+			// Dropped since the watchdog last looked. Reconnecting means HTTP calls, which mustn't happen here: this can be the shared watchdog
+			// thread sending a ping. Hand it to the executor like any other reconnect and fail this send; the caller can retry once getState() is connected
+			this.requestReconnect();
+			throw new TautException("RTM connection is reconnecting");
 		}
 
-		final int id = this.nextMessageId++;
 		json.put("id", id);
+		final String text = TautJSONCodec.getDefault().toString(json);
+		final Session session = current.get();
 		try {
 			if(TautConnection.VERBOSE) {
-				System.out.format("[Tx RTM] %s\n", json.toString());
+				System.out.format("[Tx RTM] %s\n", text);
+			}
+			// The basic remote can't take a second message while it's still writing the first
+			synchronized(session) {
+				session.getBasicRemote().sendText(text);
 			}
-			this.session.get().getBasicRemote().sendText(json.toString());
 		} catch(IOException e) {
 			throw new TautException(e);
 		}
-		return id;
 	}
 }
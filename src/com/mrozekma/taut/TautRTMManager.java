@@ -0,0 +1,225 @@
+package com.mrozekma.taut;
+
+import org.glassfish.tyrus.client.ClientManager;
+import org.glassfish.tyrus.client.ClientProperties;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Hosts many RTM connections (one per token) on one websocket container, HTTP transport and event dispatcher,
+// instead of each connection bringing its own selector and thread pools.
+// Connections are started one at a time, 'startupInterval' apart, so adding hundreds of workspaces at once doesn't turn into a burst of rtm.start calls
+public class TautRTMManager implements AutoCloseable {
+	private static class Entry {
+		final CompletableFuture<TautRTMConnection> future = new CompletableFuture<>();
+		volatile Optional<TautConnection> conn = Optional.empty();
+		volatile Optional<TautRTMConnection> rtm = Optional.empty();
+		boolean removed = false; // Guarded by the entry's lock
+	}
+
+	private final TautHTTPTransport transport;
+	private final TautEventDispatcher dispatcher;
+	private final boolean ownsResources; // Whether the transport and dispatcher were made by us, and so should be closed with us
+	private final ClientManager cm = ClientManager.createClient();
+	private final ScheduledExecutorService starter = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "taut-rtm-starter");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final java.util.Map<String, Entry> entries = new ConcurrentHashMap<>(); // token -> entry
+	private final List<TautEventListener> listeners = new CopyOnWriteArrayList<>();
+
+	private long startupInterval = 1000; // milliseconds
+	private long nextStart = System.nanoTime();
+	private volatile long metricsStart = System.nanoTime(), metricsBaseline = 0;
+	private boolean closed = false;
+
+	public TautRTMManager() {
+		this(new TautHTTPTransport(), TautEventDispatcher.striped(), true);
+	}
+
+	public TautRTMManager(TautHTTPTransport transport, TautEventDispatcher dispatcher) {
+		this(transport, dispatcher, false);
+	}
+
+	private TautRTMManager(TautHTTPTransport transport, TautEventDispatcher dispatcher, boolean ownsResources) {
+		this.transport = transport;
+		this.dispatcher = dispatcher;
+		this.ownsResources = ownsResources;
+		this.cm.getProperties().put(ClientProperties.SHARED_CONTAINER, true);
+	}
+
+	public TautHTTPTransport getTransport() { return this.transport; }
+	public TautEventDispatcher getDispatcher() { return this.dispatcher; }
+	public synchronized long getStartupInterval() { return this.startupInterval; }
+
+	// Time between connection startups, in milliseconds
+	public synchronized TautRTMManager setStartupInterval(long startupInterval) {
+		this.startupInterval = startupInterval;
+		return this;
+	}
+
+	// Listeners are added to every connection, including ones added later
+	public void addListener(TautEventListener listener) {
+		this.listeners.add(listener);
+		this.forEachConnection(rtm -> rtm.addListener(listener));
+	}
+
+	public void removeListener(TautEventListener listener) {
+		this.listeners.remove(listener);
+		this.forEachConnection(rtm -> rtm.removeListener(listener));
+	}
+
+	// Queues a connection for 'token'. The future completes once it's connected, or fails if it couldn't connect;
+	// a failed token is forgotten and can be added again. Adding a token that's already here returns the existing connection
+	public synchronized CompletableFuture<TautRTMConnection> add(String token) {
+		if(this.closed) {
+			final CompletableFuture<TautRTMConnection> rtn = new CompletableFuture<>();
+			rtn.completeExceptionally(new TautException("RTM manager closed"));
+			return rtn;
+		}
+		final Entry existing = this.entries.get(token);
+		if(existing != null) {
+			return existing.future;
+		}
+
+		final Entry entry = new Entry();
+		this.entries.put(token, entry);
+		final long now = System.nanoTime();
+		this.nextStart = Math.max(this.nextStart, now);
+		final long delay = this.nextStart - now;
+		this.nextStart += TimeUnit.MILLISECONDS.toNanos(this.startupInterval);
+		this.starter.schedule(() -> this.start(token, entry), delay, TimeUnit.NANOSECONDS);
+		return entry.future;
+	}
+
+	private void start(String token, Entry entry) {
+		if(this.entries.get(token) != entry) {
+			// Removed while waiting to start
+			entry.future.cancel(false);
+			return;
+		}
+		try {
+			final TautConnection conn = new TautConnection(token, this.transport);
+			entry.conn = Optional.of(conn);
+			final TautRTMConnection rtm = conn.rtmStart(this.dispatcher, this.cm);
+			for(TautEventListener listener : this.listeners) {
+				rtm.addListener(listener);
+			}
+			synchronized(entry) {
+				if(entry.removed) {
+					// Removed while starting; remove() has already cancelled the future
+					rtm.disconnect();
+					return;
+				}
+				entry.rtm = Optional.of(rtm);
+			}
+			entry.future.complete(rtm);
+		} catch(TautException | RuntimeException e) {
+			this.entries.remove(token, entry);
+			entry.future.completeExceptionally(e);
+		}
+	}
+
+	// Disconnects and forgets the connection for 'token'. If it hasn't started yet, its future is cancelled
+	public void remove(String token) throws TautException {
+		final Entry entry = this.entries.remove(token);
+		if(entry == null) {
+			return;
+		}
+		final Optional<TautRTMConnection> rtm;
+		synchronized(entry) {
+			entry.removed = true;
+			rtm = entry.rtm;
+		}
+		entry.future.cancel(false);
+		if(rtm.isPresent()) {
+			rtm.get().disconnect();
+		}
+	}
+
+	private void forEachConnection(Consumer<TautRTMConnection> fn) {
+		for(Entry entry : this.entries.values()) {
+			entry.rtm.ifPresent(fn);
+		}
+	}
+
+	public List<TautRTMConnection> getConnections() {
+		return this.entries.values().stream().map(entry -> entry.rtm).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+	}
+
+	// Number of tokens added but not yet started
+	public int getPendingCount() {
+		return (int)this.entries.values().stream().filter(entry -> !entry.rtm.isPresent()).count();
+	}
+
+	// State of each started connection, keyed by team ID
+	public java.util.Map<String, TautRTMConnection.State> getStates() {
+		return this.getConnections().stream().collect(Collectors.toMap(rtm -> rtm.getConnection().getTeamId(), TautRTMConnection::getState, (a, b) -> a));
+	}
+
+	public java.util.Map<TautRTMConnection.State, Long> getStateCounts() {
+		return this.getConnections().stream().collect(Collectors.groupingBy(TautRTMConnection::getState, () -> new EnumMap<>(TautRTMConnection.State.class), Collectors.counting()));
+	}
+
+	// Connections that aren't currently connected
+	public List<TautRTMConnection> getUnhealthyConnections() {
+		return this.getConnections().stream().filter(rtm -> rtm.getState() != TautRTMConnection.State.connected).collect(Collectors.toList());
+	}
+
+	private long sum(Function<TautRTMConnection, Long> fn) {
+		return this.getConnections().stream().mapToLong(fn::apply).sum();
+	}
+
+	public long getReceivedEventCount() { return this.sum(TautRTMConnection::getReceivedEventCount); }
+	public long getSkippedEventCount() { return this.sum(TautRTMConnection::getSkippedEventCount); }
+	public long getReconnectCount() { return this.sum(TautRTMConnection::getReconnectCount); }
+	public long getMaxPingRttMillis() { return this.getConnections().stream().mapToLong(TautRTMConnection::getMaxPingRttMillis).max().orElse(0); }
+
+	// Frames received per second across all connections since the manager was created or resetMetrics() was last called
+	public double getEventsPerSecond() {
+		final double elapsed = (System.nanoTime() - this.metricsStart) / 1e9;
+		// Removing a connection takes its events out of the total, which can leave it below the baseline
+		return (elapsed <= 0) ? 0 : Math.max(0, this.getReceivedEventCount() - this.metricsBaseline) / elapsed;
+	}
+
+	public void resetMetrics() {
+		this.metricsBaseline = this.getReceivedEventCount();
+		this.metricsStart = System.nanoTime();
+		this.dispatcher.resetMetrics();
+	}
+
+	// Disconnects everything and cancels the futures of tokens still waiting to start, then shuts down the websocket client.
+	// The transport and dispatcher are only closed if the manager made them; ones passed in may be shared with other code
+	@Override public void close() throws TautException {
+		synchronized(this) {
+			this.closed = true;
+		}
+		this.starter.shutdownNow();
+		TautException failure = null;
+		for(String token : new ArrayList<>(this.entries.keySet())) {
+			try {
+				this.remove(token);
+			} catch(TautException e) {
+				failure = e;
+			}
+		}
+		// Always ours, unlike the transport and dispatcher
+		this.cm.shutdown();
+		if(this.ownsResources) {
+			this.dispatcher.shutdown();
+			try {
+				this.transport.close();
+			} catch(IOException e) {
+				failure = new TautException(e);
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+}
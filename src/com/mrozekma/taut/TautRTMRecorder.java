@@ -0,0 +1,108 @@
+package com.mrozekma.taut;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Append-only log of raw RTM frames, for replaying with TautRTMReplay.
+// The file starts with MAGIC, followed by one record per frame: the receive time (epoch milliseconds), the frame length, and the frame in UTF-8.
+// Records are buffered, so a crash can lose the last few; a truncated final record is ignored when reading
+public class TautRTMRecorder implements Closeable {
+	static final byte[] MAGIC = "TAUTRTM1".getBytes(StandardCharsets.US_ASCII);
+
+	@FunctionalInterface
+	interface FrameConsumer {
+		void accept(long time, String frame) throws TautException;
+	}
+
+	private final File file;
+	private final DataOutputStream out;
+	private long recorded = 0;
+	private boolean closed = false;
+
+	// Appends to 'file' if it's already a recording
+	public TautRTMRecorder(File file) throws TautException {
+		this.file = file;
+		try {
+			final boolean append = file.exists() && file.length() > 0;
+			if(append) {
+				try(final DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+					readHeader(in);
+				}
+			}
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+			if(!append) {
+				this.out.write(MAGIC);
+			}
+		} catch(IOException e) {
+			throw new TautException(e);
+		}
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	public synchronized long getRecordedCount() {
+		return this.recorded;
+	}
+
+	synchronized void record(long time, String frame) throws TautException {
+		if(this.closed) {
+			throw new TautException("Recorder closed");
+		}
+		final byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+		try {
+			this.out.writeLong(time);
+			this.out.writeInt(bytes.length);
+			this.out.write(bytes);
+		} catch(IOException e) {
+			throw new TautException(e);
+		}
+		this.recorded++;
+	}
+
+	public synchronized void flush() throws IOException {
+		this.out.flush();
+	}
+
+	@Override public synchronized void close() throws IOException {
+		if(!this.closed) {
+			this.closed = true;
+			this.out.close();
+		}
+	}
+
+	private static void readHeader(DataInputStream in) throws IOException, TautException {
+		final byte[] magic = new byte[MAGIC.length];
+		try {
+			in.readFully(magic);
+		} catch(EOFException e) {
+			throw new TautException("Not an RTM recording");
+		}
+		if(!Arrays.equals(magic, MAGIC)) {
+			throw new TautException("Not an RTM recording");
+		}
+	}
+
+	// Calls 'fn' with each frame in 'file', in order
+	static void read(File file, FrameConsumer fn) throws TautException {
+		try(final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			readHeader(in);
+			while(true) {
+				final long time;
+				final byte[] bytes;
+				try {
+					time = in.readLong();
+					bytes = new byte[in.readInt()];
+					in.readFully(bytes);
+				} catch(EOFException e) {
+					return;
+				}
+				fn.accept(time, new String(bytes, StandardCharsets.UTF_8));
+			}
+		} catch(IOException e) {
+			throw new TautException(e);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.mrozekma.taut;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+// Feeds frames recorded by TautRTMRecorder through the same pipeline a live TautRTMConnection uses (type filtering, cache updates, dispatch),
+// so listeners can be load tested without a connection to Slack. The TautConnection is only used by listeners and the cache updater,
+// so any API calls they make still go to whatever server it points at.
+// 'speed' scales the recorded gaps between frames: 1 replays in real time, 10 ten times faster, and Double.POSITIVE_INFINITY as fast as possible.
+// 'amplification' delivers every frame that many times, to simulate a busier workspace
+public class TautRTMReplay implements AutoCloseable {
+	public static class Result {
+		private final long frames;
+		private final long elapsed; // nanoseconds
+		private final TautEventDispatcher dispatcher;
+
+		Result(long frames, long elapsed, TautEventDispatcher dispatcher) {
+			this.frames = frames;
+			this.elapsed = elapsed;
+			this.dispatcher = dispatcher;
+		}
+
+		public long getFrames() { return this.frames; }
+		public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(this.elapsed); }
+		public double getEventsPerSecond() { return (this.elapsed == 0) ? 0 : this.frames / (this.elapsed / 1e9); }
+		public long getDispatchedCount() { return this.dispatcher.getDispatchedCount(); }
+		public long getDroppedCount() { return this.dispatcher.getDroppedCount(); }
+		public double getAverageLagMillis() { return this.dispatcher.getAverageLagMillis(); }
+		public long getMaxLagMillis() { return this.dispatcher.getMaxLagMillis(); }
+		public double getAverageHandlerMillis() { return this.dispatcher.getAverageHandlerMillis(); }
+		public long getMaxHandlerMillis() { return this.dispatcher.getMaxHandlerMillis(); }
+
+		@Override public String toString() {
+			return String.format("%d frames in %d ms (%.1f/s), handler avg %.3f ms / max %d ms, lag avg %.3f ms / max %d ms, %d dropped",
+			                     this.frames, this.getElapsedMillis(), this.getEventsPerSecond(), this.getAverageHandlerMillis(), this.getMaxHandlerMillis(),
+			                     this.getAverageLagMillis(), this.getMaxLagMillis(), this.getDroppedCount());
+		}
+	}
+
+	private final TautRTMConnection rtm;
+	private final boolean ownsDispatcher;
+	private double speed = 1;
+	private int amplification = 1;
+
+	// The replay gets a dispatcher of its own, which close() shuts down
+	public TautRTMReplay(TautConnection conn) {
+		this(conn, new TautEventDispatcher(), true);
+	}
+
+	public TautRTMReplay(TautConnection conn, TautEventDispatcher dispatcher) {
+		this(conn, dispatcher, false);
+	}
+
+	private TautRTMReplay(TautConnection conn, TautEventDispatcher dispatcher, boolean ownsDispatcher) {
+		this.rtm = TautRTMConnection.offline(conn, dispatcher);
+		this.ownsDispatcher = ownsDispatcher;
+	}
+
+	public TautRTMReplay setSpeed(double speed) {
+		if(speed <= 0) {
+			throw new IllegalArgumentException("Speed must be positive");
+		}
+		this.speed = speed;
+		return this;
+	}
+
+	public TautRTMReplay setAmplification(int amplification) {
+		if(amplification < 1) {
+			throw new IllegalArgumentException("Amplification must be at least 1");
+		}
+		this.amplification = amplification;
+		return this;
+	}
+
+	public void addListener(TautEventListener listener) {
+		this.rtm.addListener(listener);
+	}
+
+	public void removeListener(TautEventListener listener) {
+		this.rtm.removeListener(listener);
+	}
+
+	public TautEventDispatcher getDispatcher() {
+		return this.rtm.getDispatcher();
+	}
+
+	// Replays 'file' on the calling thread and waits for the listeners to finish with every event.
+	// The dispatcher's metrics are reset first, so the result only covers this replay
+	public Result replay(File file) throws TautException {
+		final TautEventDispatcher dispatcher = this.rtm.getDispatcher();
+		dispatcher.resetMetrics();
+		final long[] first = {-1};
+		final long[] frames = {0};
+		final long start = System.nanoTime();
+		TautRTMRecorder.read(file, (time, frame) -> {
+			if(first[0] < 0) {
+				first[0] = time;
+			}
+			if(!Double.isInfinite(this.speed)) {
+				final long due = start + (long)(TimeUnit.MILLISECONDS.toNanos(time - first[0]) / this.speed);
+				final long wait = due - System.nanoTime();
+				if(wait > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new TautException("Replay interrupted");
+					}
+				}
+			}
+			for(int i = 0; i < this.amplification; i++) {
+				this.rtm.onMessage(frame);
+			}
+			frames[0] += this.amplification;
+		});
+		try {
+			dispatcher.awaitIdle(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TautException("Replay interrupted");
+		}
+		return new Result(frames[0], System.nanoTime() - start, dispatcher);
+	}
+
+	// Results from earlier replays stay readable afterwards
+	@Override public void close() {
+		if(this.ownsDispatcher) {
+			this.rtm.getDispatcher().shutdown();
+		}
+	}
+}
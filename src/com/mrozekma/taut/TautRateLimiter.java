@@ -0,0 +1,219 @@
+package com.mrozekma.taut;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Paces Web API calls to stay inside Slack's per-method rate limits instead of failing once we're throttled.
+// https://api.slack.com/docs/rate-limits
+// Each route gets a token bucket refilling at its tier's rate; callers block in acquire() until a token is available.
+// An HTTP 429 pauses the route's bucket for the Retry-After period
+public class TautRateLimiter {
+	public enum Tier {
+		tier1(1), tier2(20), tier3(50), tier4(100),
+		// chat.postMessage is limited to about one message per second per channel
+		postMessage(60);
+
+		final int perMinute;
+
+		Tier(int perMinute) {
+			this.perMinute = perMinute;
+		}
+	}
+
+	static final int MAX_RETRIES = 5;
+	private static final Tier DEFAULT_TIER = Tier.tier3;
+	private static final java.util.Map<String, Tier> DEFAULT_TIERS = new Map<String, Tier>()
+			.set("auth.revoke", Tier.tier3)
+			.set("auth.test", Tier.tier4)
+			.set("bots.info", Tier.tier3)
+			.set("channels.archive", Tier.tier2)
+			.set("channels.create", Tier.tier2)
+			.set("channels.history", Tier.tier3)
+			.set("channels.info", Tier.tier3)
+			.set("channels.invite", Tier.tier3)
+			.set("channels.join", Tier.tier3)
+			.set("channels.kick", Tier.tier3)
+			.set("channels.leave", Tier.tier3)
+			.set("channels.list", Tier.tier2)
+			.set("channels.mark", Tier.tier3)
+			.set("channels.rename", Tier.tier2)
+			.set("channels.setPurpose", Tier.tier2)
+			.set("channels.setTopic", Tier.tier2)
+			.set("channels.unarchive", Tier.tier2)
+			.set("chat.delete", Tier.tier3)
+			.set("chat.meMessage", Tier.tier3)
+			.set("chat.postMessage", Tier.postMessage)
+			.set("chat.update", Tier.tier3)
+			.set("emoji.list", Tier.tier2)
+			.set("files.comments.add", Tier.tier2)
+			.set("files.comments.delete", Tier.tier2)
+			.set("files.comments.edit", Tier.tier2)
+			.set("files.delete", Tier.tier3)
+			.set("files.info", Tier.tier4)
+			.set("files.list", Tier.tier3)
+			.set("files.revokePublicURL", Tier.tier3)
+			.set("files.sharedPublicURL", Tier.tier3)
+			.set("files.upload", Tier.tier2)
+			.set("groups.archive", Tier.tier2)
+			.set("groups.create", Tier.tier2)
+			.set("groups.history", Tier.tier3)
+			.set("groups.info", Tier.tier3)
+			.set("groups.invite", Tier.tier3)
+			.set("groups.kick", Tier.tier3)
+			.set("groups.leave", Tier.tier3)
+			.set("groups.list", Tier.tier2)
+			.set("groups.mark", Tier.tier3)
+			.set("groups.rename", Tier.tier2)
+			.set("groups.setPurpose", Tier.tier2)
+			.set("groups.setTopic", Tier.tier2)
+			.set("groups.unarchive", Tier.tier2)
+			.set("im.close", Tier.tier2)
+			.set("im.history", Tier.tier3)
+			.set("im.list", Tier.tier2)
+			.set("im.open", Tier.tier3)
+			.set("reactions.add", Tier.tier3)
+			.set("reactions.get", Tier.tier3)
+			.set("reactions.remove", Tier.tier2)
+			.set("rtm.connect", Tier.tier1)
+			.set("rtm.start", Tier.tier1)
+			.set("users.info", Tier.tier4)
+			.set("users.list", Tier.tier2);
+
+	private static class Bucket {
+		private final double perNano;
+		private final double capacity;
+		private double tokens;
+		private long lastRefill;
+		private long blockedUntil;
+
+		Bucket(Tier tier) {
+			this.perNano = tier.perMinute / (double)TimeUnit.MINUTES.toNanos(1);
+			// Allow bursts of up to ten seconds worth of calls
+			this.capacity = Math.max(1, tier.perMinute / 6);
+			this.tokens = this.capacity;
+			this.lastRefill = System.nanoTime();
+			this.blockedUntil = this.lastRefill;
+		}
+
+		// Takes a token, possibly one that hasn't been refilled yet, and returns how long the caller needs to wait before using it.
+		// Going negative means callers are served in the order they arrived
+		synchronized long reserve() {
+			final long now = System.nanoTime();
+			this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.perNano);
+			this.lastRefill = now;
+			this.tokens--;
+			final long tokenWait = (this.tokens >= 0) ? 0 : (long)(-this.tokens / this.perNano);
+			return Math.max(tokenWait, this.blockedUntil - now);
+		}
+
+		synchronized void block(long nanos) {
+			this.blockedUntil = Math.max(this.blockedUntil, System.nanoTime() + nanos);
+			// Anything we'd accumulated is clearly not usable
+			this.tokens = Math.min(this.tokens, 0);
+		}
+	}
+
+	private final java.util.Map<String, Tier> tiers = new ConcurrentHashMap<>(DEFAULT_TIERS);
+	private final java.util.Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private volatile boolean enabled = true;
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+	private final AtomicLong requests = new AtomicLong(), waitedRequests = new AtomicLong(), rateLimitedResponses = new AtomicLong();
+	private final AtomicLong totalWait = new AtomicLong(), maxWait = new AtomicLong(); // nanoseconds
+
+	public boolean isEnabled() { return this.enabled; }
+
+	// When disabled, calls are sent immediately. 429 responses are still retried
+	public TautRateLimiter setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+
+	public Tier getTier(String route) {
+		return this.tiers.getOrDefault(route, DEFAULT_TIER);
+	}
+
+	public TautRateLimiter setTier(String route, Tier tier) {
+		this.tiers.put(route, tier);
+		this.buckets.keySet().removeIf(key -> key.equals(route) || key.startsWith(route + ":"));
+		return this;
+	}
+
+	private String getBucketKey(String route, JSONObject args) {
+		if(this.getTier(route) == Tier.postMessage && args.has("channel")) {
+			return route + ":" + args.get("channel");
+		}
+		return route;
+	}
+
+	private Bucket getBucket(String key, String route) {
+		return this.buckets.computeIfAbsent(key, k -> new Bucket(this.getTier(route)));
+	}
+
+	// Blocks until a call to 'route' is allowed
+	void acquire(String route, JSONObject args) throws TautException {
+		this.requests.incrementAndGet();
+		if(!this.enabled) {
+			return;
+		}
+		final long wait = this.getBucket(this.getBucketKey(route, args), route).reserve();
+		if(wait <= 0) {
+			return;
+		}
+
+		this.waitedRequests.incrementAndGet();
+		this.totalWait.addAndGet(wait);
+		this.maxWait.accumulateAndGet(wait, Math::max);
+		this.queueDepth.incrementAndGet();
+		try {
+			sleep(route, wait);
+		} finally {
+			this.queueDepth.decrementAndGet();
+		}
+	}
+
+	private static void sleep(String route, long nanos) throws TautException {
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TautException("Interrupted waiting for rate limit on " + route, e);
+		}
+	}
+
+	// Called when Slack responds with HTTP 429. Blocks the route's bucket, then waits out the Retry-After period.
+	// Slack's limit applies whether or not ours is enabled, so the wait happens even when acquire() wouldn't
+	void onRateLimited(String route, JSONObject args, long retryAfterSeconds) throws TautException {
+		this.rateLimitedResponses.incrementAndGet();
+		final long nanos = TimeUnit.SECONDS.toNanos(Math.max(1, retryAfterSeconds));
+		if(!this.enabled) {
+			sleep(route, nanos);
+			return;
+		}
+		this.getBucket(this.getBucketKey(route, args), route).block(nanos);
+		this.acquire(route, args);
+	}
+
+	// Number of calls currently waiting for their route's rate limit
+	public int getQueueDepth() { return this.queueDepth.get(); }
+	public long getRequestCount() { return this.requests.get(); }
+	public long getWaitedRequestCount() { return this.waitedRequests.get(); }
+	public long getRateLimitedCount() { return this.rateLimitedResponses.get(); }
+	public long getTotalWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(this.totalWait.get()); }
+	public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(this.maxWait.get()); }
+
+	public double getAverageWaitMillis() {
+		final long requests = this.requests.get();
+		return (requests == 0) ? 0 : this.totalWait.get() / 1e6 / requests;
+	}
+
+	public void resetMetrics() {
+		this.requests.set(0);
+		this.waitedRequests.set(0);
+		this.rateLimitedResponses.set(0);
+		this.totalWait.set(0);
+		this.maxWait.set(0);
+	}
+}
@@ -19,7 +19,7 @@ public class TautReaction {
 
 		this.name = json.getString("name");
 		this.count = json.getInt("count");
-		this.users = json.getJSONArray("users").<String>stream().map(id -> new TautUser(this.conn, id)).toArray(TautUser[]::new);
+		this.users = json.getJSONArray("users").<String>stream().map(this.conn::getUserById).toArray(TautUser[]::new);
 	}
 
 	public String getName() { return this.name; }
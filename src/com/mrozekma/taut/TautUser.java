@@ -1,9 +1,12 @@
 package com.mrozekma.taut;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -52,6 +55,10 @@ public class TautUser extends LazyLoadedObject {
 	public Optional<String> getTwoFactorType() throws TautException { this.checkLoad(); return this.twoFactorType; }
 //	public boolean hasFiles() throws TautException { this.checkLoad(); return this.hasFiles; }
 
+	public CompletableFuture<TautUser> loadAsync() {
+		return this.checkLoadAsync().thenApply(v -> this);
+	}
+
 
 	@Override public void prepJSONObjectForPost(JSONObject args) {
 		args.put(this.isBot() ? "bot" : "user", this.getId());
@@ -63,6 +70,10 @@ public class TautUser extends LazyLoadedObject {
 
 	@Override protected void populate(JSONObject json) {
 		this.name = json.getString("name");
+		// Bot IDs (B...) aren't users. A bot often has the same name as its bot user, and getByName() should find the user
+		if(!this.isBot()) {
+			this.conn.userNames.put(this.name, this.getId());
+		}
 		this.deleted = json.getBoolean("deleted");
 		if(json.has("color")) {
 			final String rgb = json.getString("color");
@@ -121,26 +132,61 @@ public class TautUser extends LazyLoadedObject {
 	}
 
 	public TautDirectChannel getDirectChannel() throws TautException {
-		return new TautDirectChannel(this);
+		return TautDirectChannel.getByUser(this);
 	}
 
 	public static TautUser getById(TautConnection conn, String id) {
-		return new TautUser(conn, id);
+		return conn.userCache.get(id, i -> new TautUser(conn, i));
+	}
+
+	static TautUser fromJSON(TautConnection conn, JSONObject json) {
+		return conn.userCache.update(json, j -> new TautUser(conn, j));
 	}
 
 	public static TautUser getByName(TautConnection conn, String name) throws TautException {
 		if(name.startsWith("@")) {
 			name = name.substring(1);
 		}
-		for(TautUser user : getAll(conn)) {
+		Optional<String> id = conn.userNames.get(name);
+		if(id.isPresent()) {
+			final TautUser user = getById(conn, id.get());
 			if(user.getName().equalsIgnoreCase(name)) {
 				return user;
 			}
+			// Renamed without us hearing about it
+			conn.userNames.remove(id.get());
+		}
+		if(!conn.userNames.isKnownMissing(name)) {
+			// Every user populated from the list is indexed
+			forEach(conn, user -> {});
+			id = conn.userNames.get(name);
+			if(id.isPresent()) {
+				return getById(conn, id.get());
+			}
+			conn.userNames.addMiss(name);
 		}
 		throw new TautException(String.format("User `%s' not found", name));
 	}
 
 	public static List<TautUser> getAll(TautConnection conn) throws TautException {
-		return conn.post("users.list").<JSONObject>streamArray("members").map(json -> new TautUser(conn, json)).collect(Collectors.toList());
+		return getAll(conn, false);
+	}
+
+	// With 'parallel' set the whole list is downloaded first and the users are built from it in parallel,
+	// which is faster on workspaces with thousands of users but holds the full response in memory
+	public static List<TautUser> getAll(TautConnection conn, boolean parallel) throws TautException {
+		if(parallel) {
+			return conn.post("users.list").getJSONArray("members").<JSONObject>stream(true).map(json -> fromJSON(conn, json)).collect(Collectors.toList());
+		}
+		final List<TautUser> rtn = new ArrayList<>();
+		forEach(conn, rtn::add);
+		return rtn;
+	}
+
+	// Users are passed to 'fn' as they're parsed from the response, so the full user list never has to be held in memory.
+	// The response's HTTP connection is held until 'fn' has seen every user, so API calls made from 'fn' can deadlock when the transport's
+	// connection pool is exhausted. Use getAll() instead if 'fn' needs to call the API
+	public static void forEach(TautConnection conn, Consumer<TautUser> fn) throws TautException {
+		conn.postStreaming("users.list", new JSONObject(), "members", (JSONObject json) -> fn.accept(fromJSON(conn, json)));
 	}
 }
@@ -0,0 +1,172 @@
+package com.mrozekma.taut;
+
+import org.json.JSONException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+// On-disk copy of the workspace data the caches are built from, so a restarted process can answer lookups before talking to Slack.
+// The file uses the same keys as rtm.start (users, bots, channels, groups, ims), plus emoji, so it can be passed straight to TautConnection.hydrate().
+// It's tied to the team and user that wrote it; a snapshot from a different token is ignored
+class WorkspaceSnapshot {
+	static final int VERSION = 1;
+	static final String[] KEYS = {"users", "bots", "channels", "groups", "ims", "emoji"};
+	static final String[] LIST_KEYS = {"users", "bots", "channels", "groups", "ims"};
+
+	private final File file;
+	private final String teamId, userId;
+	private final JSONObject state = new JSONObject(); // Everything but the lists
+	// The lists are kept by element ID so a refresh can replace elements one at a time as they stream in
+	private final java.util.Map<String, java.util.Map<String, JSONObject>> lists = new LinkedHashMap<>();
+
+	WorkspaceSnapshot(File file, String teamId, String userId) {
+		this.file = file;
+		this.teamId = teamId;
+		this.userId = userId;
+	}
+
+	File getFile() {
+		return this.file;
+	}
+
+	// Returns the saved state if the file exists and belongs to this team and user
+	synchronized Optional<JSONObject> load() throws TautException {
+		if(!this.file.exists()) {
+			return Optional.empty();
+		}
+		final JSONObject saved;
+		try(final Reader reader = new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8)) {
+			saved = new JSONObject(new JSONTokener(reader));
+		} catch(IOException e) {
+			throw new TautException(e);
+		} catch(JSONException e) {
+			// Corrupt snapshot; it'll be overwritten by the next save
+			return Optional.empty();
+		}
+		if(saved.optInt("version", 0) != VERSION || !saved.optString("team_id", "").equals(this.teamId) || !saved.optString("user_id", "").equals(this.userId)) {
+			return Optional.empty();
+		}
+		for(String key : KEYS) {
+			if(saved.has(key)) {
+				this.set(key, saved.get(key));
+			}
+		}
+		return Optional.of(saved);
+	}
+
+	private static boolean isList(String key) {
+		for(String listKey : LIST_KEYS) {
+			if(listKey.equals(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private java.util.Map<String, JSONObject> list(String key) {
+		return this.lists.computeIfAbsent(key, k -> new LinkedHashMap<>());
+	}
+
+	// Returns true if 'value' differs from what was there
+	synchronized boolean set(String key, Object value) {
+		if(isList(key) && value instanceof org.json.JSONArray) {
+			final java.util.Map<String, JSONObject> list = new LinkedHashMap<>();
+			final JSONArray arr = (JSONArray)JSONObject.convert(value);
+			for(int i = 0; i < arr.length(); i++) {
+				final JSONObject json = arr.getJSONObject(i);
+				list.put(json.getString("id"), json);
+			}
+			final java.util.Map<String, JSONObject> old = this.lists.put(key, list);
+			return old == null || !old.keySet().equals(list.keySet()) || list.entrySet().stream().anyMatch(e -> !same(e.getValue(), old.get(e.getKey())));
+		}
+		final boolean changed = !same(value, this.state.opt(key));
+		this.state.put(key, value);
+		return changed;
+	}
+
+	// Adds or replaces one element of the list 'key'. Returns true if it's new or differs from the stored copy
+	synchronized boolean merge(String key, JSONObject json) {
+		return !same(json, this.list(key).put(json.getString("id"), json));
+	}
+
+	// Drops the elements of the list 'key' that aren't in 'ids'. Returns true if any were dropped
+	synchronized boolean retain(String key, Set<String> ids) {
+		return this.list(key).keySet().retainAll(ids);
+	}
+
+	synchronized boolean has(String key, String id) {
+		return this.list(key).containsKey(id);
+	}
+
+	// org.json's similar() is newer than the version we use
+	private static boolean same(Object a, Object b) {
+		if(a instanceof org.json.JSONObject && b instanceof org.json.JSONObject) {
+			final org.json.JSONObject x = (org.json.JSONObject)a, y = (org.json.JSONObject)b;
+			if(x.length() != y.length()) {
+				return false;
+			}
+			for(Object key : x.keySet()) {
+				if(!y.has((String)key) || !same(x.opt((String)key), y.opt((String)key))) {
+					return false;
+				}
+			}
+			return true;
+		} else if(a instanceof org.json.JSONArray && b instanceof org.json.JSONArray) {
+			final org.json.JSONArray x = (org.json.JSONArray)a, y = (org.json.JSONArray)b;
+			if(x.length() != y.length()) {
+				return false;
+			}
+			for(int i = 0; i < x.length(); i++) {
+				if(!same(x.opt(i), y.opt(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return Objects.equals(a, b);
+	}
+
+	synchronized Optional<JSONObject> getEmoji() {
+		return this.state.has("emoji") ? Optional.of(this.state.getJSONObject("emoji")) : Optional.empty();
+	}
+
+	// Writes to a temporary file first so a crash mid-write can't leave a truncated snapshot behind
+	synchronized void save() throws TautException {
+		final JSONObject out = new JSONObject()
+				.put("version", VERSION)
+				.put("team_id", this.teamId)
+				.put("user_id", this.userId)
+				.put("saved", System.currentTimeMillis() / 1000);
+		this.state.forEach((String k, Object v) -> out.put(k, v));
+		this.lists.forEach((k, v) -> out.put(k, new JSONArray(v.values())));
+
+		final File dir = this.file.getAbsoluteFile().getParentFile();
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(this.file.getName(), ".tmp", dir);
+			try(final Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+				out.write(writer);
+			}
+			try {
+				Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch(IOException | JSONException e) {
+			throw new TautException(e);
+		} finally {
+			// Only still set if the write or the move failed
+			if(tmp != null) {
+				tmp.delete();
+			}
+		}
+	}
+}